@@ -0,0 +1,183 @@
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+    Checks that DayFormatter gives the strings Utility used to build on every call, and that it
+    notices a new day, time zone or locale.
+ */
+public class TestDayFormatter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDayFormatter.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    // A few days back, and past the week the friendly strings use day names for.
+    private static final int FIRST_DAY = -3;
+    private static final int LAST_DAY = 14;
+
+    private Locale mDefaultLocale;
+    private TimeZone mDefaultTimeZone;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultLocale = Locale.getDefault();
+        mDefaultTimeZone = TimeZone.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Locale.setDefault(mDefaultLocale);
+        TimeZone.setDefault(mDefaultTimeZone);
+        super.tearDown();
+    }
+
+    public void testStringsMatch() {
+        DayFormatter formatter = new DayFormatter(mContext);
+        long now = System.currentTimeMillis();
+        for (int day = FIRST_DAY; day <= LAST_DAY; day++) {
+            long date = now + day * DAY_IN_MILLIS;
+            // Twice, so the second comes from the cache.
+            for (int i = 0; i < 2; i++) {
+                assertEquals("Error: wrong friendly day string for day " + day,
+                        oldFriendlyDayString(date), formatter.getFriendlyDayString(date));
+                assertEquals("Error: wrong day name for day " + day,
+                        oldDayName(date), formatter.getDayName(date));
+                assertEquals("Error: wrong month and day for day " + day,
+                        oldFormattedMonthDay(date), formatter.getFormattedMonthDay(date));
+            }
+        }
+    }
+
+    public void testNewDay() {
+        final long[] now = {System.currentTimeMillis()};
+        DayFormatter formatter = new DayFormatter(mContext) {
+            @Override
+            long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        long tomorrow = now[0] + DAY_IN_MILLIS;
+        assertEquals(mContext.getString(R.string.tomorrow), formatter.getDayName(tomorrow));
+
+        now[0] = tomorrow;
+        assertEquals("Error: tomorrow was still tomorrow a day later",
+                mContext.getString(R.string.today), formatter.getDayName(tomorrow));
+    }
+
+    public void testNewLocale() {
+        DayFormatter formatter = new DayFormatter(mContext);
+        long date = System.currentTimeMillis() + 3 * DAY_IN_MILLIS;
+        Locale.setDefault(Locale.US);
+        assertEquals(new SimpleDateFormat("EEEE", Locale.US).format(date),
+                formatter.getDayName(date));
+
+        // The system broadcasts ACTION_LOCALE_CHANGED, and the receiver passes it on.
+        Locale.setDefault(Locale.FRANCE);
+        formatter.onDefaultsChanged();
+        assertEquals("Error: the day name didn't follow the locale",
+                new SimpleDateFormat("EEEE", Locale.FRANCE).format(date),
+                formatter.getDayName(date));
+    }
+
+    public void testNewTimeZone() {
+        DayFormatter formatter = new DayFormatter(mContext);
+        // Late in the evening in New York is tomorrow in Tokyo.
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        long date = System.currentTimeMillis() + 10 * DAY_IN_MILLIS;
+        Time time = new Time();
+        time.set(date);
+        time.hour = 23;
+        long evening = time.toMillis(false);
+        String newYork = oldFormattedMonthDay(evening);
+        assertEquals(newYork, formatter.getFormattedMonthDay(evening));
+
+        // Until it's told, it keeps the zone it has rather than looking it up on every call.
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+        assertEquals(newYork, formatter.getFormattedMonthDay(evening));
+
+        // The system broadcasts ACTION_TIMEZONE_CHANGED, and the receiver passes it on.
+        formatter.onDefaultsChanged();
+        assertEquals("Error: the month and day didn't follow the time zone",
+                oldFormattedMonthDay(evening), formatter.getFormattedMonthDay(evening));
+    }
+
+    public void testThreadsAgree() throws Exception {
+        final DayFormatter formatter = new DayFormatter(mContext);
+        final long now = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Callable<String> formatAll = new Callable<String>() {
+                @Override
+                public String call() {
+                    StringBuilder sb = new StringBuilder();
+                    for (int pass = 0; pass < NUM_PASSES; pass++) {
+                        sb.setLength(0);
+                        for (int day = FIRST_DAY; day <= LAST_DAY; day++) {
+                            sb.append(formatter.getFriendlyDayString(now + day * DAY_IN_MILLIS))
+                                    .append('\n');
+                        }
+                    }
+                    return sb.toString();
+                }
+            };
+            Future<?>[] futures = new Future<?>[4];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executor.submit(formatAll);
+            }
+            String expected = formatAll.call();
+            for (Future<?> future : futures) {
+                assertEquals(expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // The way Utility built the strings before DayFormatter.
+
+    private String oldFriendlyDayString(long dateInMillis) {
+        Time time = new Time();
+        time.setToNow();
+        long currentTime = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return String.format(mContext.getString(R.string.format_full_friendly_date,
+                    mContext.getString(R.string.today), oldFormattedMonthDay(dateInMillis)));
+        } else if (julianDay < currentJulianDay + 7) {
+            return oldDayName(dateInMillis);
+        } else {
+            return new SimpleDateFormat("EEE MMM dd").format(dateInMillis);
+        }
+    }
+
+    private String oldDayName(long dateInMillis) {
+        Time t = new Time();
+        t.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return mContext.getString(R.string.today);
+        } else if (julianDay == currentJulianDay + 1) {
+            return mContext.getString(R.string.tomorrow);
+        } else {
+            return new SimpleDateFormat("EEEE").format(dateInMillis);
+        }
+    }
+
+    private static String oldFormattedMonthDay(long dateInMillis) {
+        Time time = new Time();
+        time.setToNow();
+        return new SimpleDateFormat("MMMM dd").format(dateInMillis);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.CountingContentObserver;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    A change of units or art pack only changes how the weather is drawn.  It should reach the
+    fragments and the widgets without making any loader query the provider again.
+ */
+public class TestDisplaySettings extends AndroidTestCase {
+
+    public void testDisplaySettingsChangeDoesNotRequery() throws InterruptedException {
+        CountingContentObserver observer = CountingContentObserver.create();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherContract.BASE_CONTENT_URI, true, observer);
+
+        final CountDownLatch received = new CountDownLatch(1);
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                received.countDown();
+            }
+        };
+        mContext.registerReceiver(receiver,
+                new IntentFilter(Utility.ACTION_DISPLAY_SETTINGS_CHANGED));
+
+        int generation = Utility.getDisplaySettingsGeneration();
+        Utility.notifyDisplaySettingsChanged(mContext);
+
+        assertTrue("Error: the display settings generation didn't change",
+                generation != Utility.getDisplaySettingsGeneration());
+        assertTrue("Error: the widgets weren't told about the change",
+                received.await(5, TimeUnit.SECONDS));
+        assertEquals("Error: a display settings change made the loaders query again",
+                0, observer.settleAndGetChangeCount(200));
+
+        mContext.unregisterReceiver(receiver);
+        mContext.getContentResolver().unregisterContentObserver(observer);
+        observer.quit();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Checks the updates ForecastAdapter gets when a load changes some of the days: only the
+    changed days, and no image reload when only the text changed.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final int NUM_DAYS = 14;
+
+    private final long mToday = System.currentTimeMillis();
+
+    public void testUnchangedForecastDispatchesNothing() {
+        List<String> updates = diff(createRows(0, 800, 25.0), createRows(0, 800, 25.0));
+        assertTrue("Error: an unchanged forecast dispatched " + updates, updates.isEmpty());
+    }
+
+    public void testTemperatureChangeOnlyRebindsText() {
+        List<ForecastRow> oldRows = createRows(0, 800, 25.0);
+        List<ForecastRow> newRows = new ArrayList<>(oldRows);
+        newRows.set(3, createRows(0, 800, 30.0).get(3));
+
+        List<String> updates = diff(oldRows, newRows);
+        assertEquals(1, updates.size());
+        assertEquals("change 3 1 text", updates.get(0));
+    }
+
+    public void testConditionChangeRebindsImage() {
+        List<ForecastRow> oldRows = createRows(0, 800, 25.0);
+        List<ForecastRow> newRows = new ArrayList<>(oldRows);
+        newRows.set(5, createRows(0, 500, 25.0).get(5));
+
+        List<String> updates = diff(oldRows, newRows);
+        assertEquals(1, updates.size());
+        assertEquals("change 5 1 full", updates.get(0));
+    }
+
+    public void testNewDayShiftsList() {
+        // A day later the first day is gone and a new one is at the end.
+        List<String> updates = diff(createRows(0, 800, 25.0), createRows(1, 800, 25.0));
+        assertEquals(2, updates.size());
+        assertTrue(updates.contains("remove 0 1"));
+        assertTrue(updates.contains("insert " + (NUM_DAYS - 1) + " 1"));
+    }
+
+    private List<String> diff(List<ForecastRow> oldRows, List<ForecastRow> newRows) {
+        final List<String> updates = new ArrayList<>();
+        DiffUtil.calculateDiff(new ForecastAdapter.ForecastDiffCallback(oldRows, newRows), false)
+                .dispatchUpdatesTo(new ListUpdateCallback() {
+                    @Override
+                    public void onInserted(int position, int count) {
+                        updates.add("insert " + position + " " + count);
+                    }
+
+                    @Override
+                    public void onRemoved(int position, int count) {
+                        updates.add("remove " + position + " " + count);
+                    }
+
+                    @Override
+                    public void onMoved(int fromPosition, int toPosition) {
+                        updates.add("move " + fromPosition + " " + toPosition);
+                    }
+
+                    @Override
+                    public void onChanged(int position, int count, Object payload) {
+                        updates.add("change " + position + " " + count + " "
+                                + (payload == ForecastAdapter.PAYLOAD_TEXT ? "text" : "full"));
+                    }
+                });
+        return updates;
+    }
+
+    private List<ForecastRow> createRows(int firstDay, int weatherId, double high) {
+        // The columns of ForecastFragment.FORECAST_COLUMNS, in order.
+        MatrixCursor cursor = new MatrixCursor(new String[]{"_id", "weather_id", "date",
+                "short_desc", "max", "min", "location_setting", "weather_id", "coord_lat",
+                "coord_long"});
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        for (int i = firstDay; i < firstDay + NUM_DAYS; i++) {
+            long date = mToday + i * millisecondsInADay;
+            cursor.addRow(new Object[]{i, weatherId, date, "Clear", high, 12.0, "94043",
+                    weatherId, 37.4, -122.1});
+        }
+
+        List<ForecastRow> rows = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            rows.add(ForecastRow.fromCursor(mContext, cursor, true,
+                    WeatherConditions.ART_PACK_NONE));
+        }
+        cursor.close();
+        return rows;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    Checks that the forecast snapshot gives back what was saved, only for the location and day
+    it was saved for.
+ */
+public class TestForecastSnapshot extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastSnapshot.class.getSimpleName();
+
+    private static final String TEST_LOCATION = "snapshot-test";
+    private static final int NUM_DAYS = 14;
+
+    private long mLocationId = -1;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mLocationId != -1) {
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                    WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(mLocationId)});
+            mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                    LocationEntry._ID + " = ?", new String[]{Long.toString(mLocationId)});
+        }
+        // Put back the snapshot of the real forecast.
+        ForecastSnapshot.update(mContext, Utility.getPreferredLocation(mContext));
+        super.tearDown();
+    }
+
+    public void testRoundTrip() {
+        List<ForecastRow> rows = ForecastLoader.formatRows(mContext, createForecastCursor());
+        ForecastSnapshot.write(mContext, TEST_LOCATION, rows);
+
+        assertEquals("Error: the snapshot didn't give back the rows it saved",
+                rows, ForecastSnapshot.read(mContext, TEST_LOCATION));
+    }
+
+    public void testOtherLocationIgnored() {
+        ForecastSnapshot.write(mContext, TEST_LOCATION,
+                ForecastLoader.formatRows(mContext, createForecastCursor()));
+
+        assertNull("Error: the snapshot was used for another location",
+                ForecastSnapshot.read(mContext, TEST_LOCATION + "-other"));
+    }
+
+    public void testDamagedFileIgnored() throws Exception {
+        ForecastSnapshot.write(mContext, TEST_LOCATION,
+                ForecastLoader.formatRows(mContext, createForecastCursor()));
+        File file = new File(mContext.getFilesDir(), "forecast_snapshot");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{0, 0, 0, 1, 0});
+        out.close();
+
+        assertNull("Error: a damaged snapshot was used",
+                ForecastSnapshot.read(mContext, TEST_LOCATION));
+    }
+
+    public void testUpdateFromProvider() {
+        insertForecast();
+        ForecastSnapshot.update(mContext, TEST_LOCATION);
+
+        List<ForecastRow> rows = ForecastSnapshot.read(mContext, TEST_LOCATION);
+        assertNotNull("Error: no snapshot after an update", rows);
+        assertEquals("Error: the snapshot doesn't hold the forecast",
+                queryRows(), rows);
+    }
+
+    /*
+        A sync that changed nothing, a 304 say, leaves a snapshot that's still current alone,
+        but replaces one made for another location.
+     */
+    public void testUnchangedSyncKeepsCurrentSnapshot() {
+        insertForecast();
+        List<ForecastRow> none = Collections.emptyList();
+        ForecastSnapshot.write(mContext, TEST_LOCATION, none);
+
+        ForecastSnapshot.update(mContext, TEST_LOCATION, false);
+        assertEquals("Error: a current snapshot was written again",
+                none, ForecastSnapshot.read(mContext, TEST_LOCATION));
+
+        ForecastSnapshot.update(mContext, TEST_LOCATION, true);
+        assertEquals(queryRows(), ForecastSnapshot.read(mContext, TEST_LOCATION));
+
+        ForecastSnapshot.write(mContext, TEST_LOCATION + "-other", none);
+        ForecastSnapshot.update(mContext, TEST_LOCATION, false);
+        assertEquals("Error: a snapshot for another location was kept",
+                queryRows(), ForecastSnapshot.read(mContext, TEST_LOCATION));
+    }
+
+    private List<ForecastRow> queryRows() {
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(TEST_LOCATION,
+                System.currentTimeMillis());
+        Cursor cursor = mContext.getContentResolver().query(uri,
+                ForecastFragment.FORECAST_COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertNotNull(cursor);
+        try {
+            return ForecastLoader.formatRows(mContext, cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void insertForecast() {
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Snapshot");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 37.4);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -122.1);
+        mLocationId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location));
+
+        ContentValues[] days = new ContentValues[NUM_DAYS];
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        long today = System.currentTimeMillis();
+        for (int i = 0; i < NUM_DAYS; i++) {
+            ContentValues day = new ContentValues();
+            day.put(WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+            day.put(WeatherEntry.COLUMN_DATE, today + i * millisecondsInADay);
+            day.put(WeatherEntry.COLUMN_DEGREES, 90.0);
+            day.put(WeatherEntry.COLUMN_HUMIDITY, 50.0);
+            day.put(WeatherEntry.COLUMN_PRESSURE, 1000.0);
+            day.put(WeatherEntry.COLUMN_MAX_TEMP, 25.0 + i);
+            day.put(WeatherEntry.COLUMN_MIN_TEMP, 12.0 - i);
+            day.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+            day.put(WeatherEntry.COLUMN_WIND_SPEED, 5.0);
+            day.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + i % 4);
+            days[i] = day;
+        }
+        assertEquals(NUM_DAYS,
+                mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days));
+    }
+
+    private static MatrixCursor createForecastCursor() {
+        // The columns of ForecastFragment.FORECAST_COLUMNS, in order.
+        MatrixCursor cursor = new MatrixCursor(new String[]{"_id", "weather_id", "date",
+                "short_desc", "max", "min", "location_setting", "weather_id", "coord_lat",
+                "coord_long"});
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        long today = System.currentTimeMillis();
+        for (int i = 0; i < NUM_DAYS; i++) {
+            cursor.addRow(new Object[]{i, 800 + i % 4, today + i * millisecondsInADay, "Clear",
+                    25.0 + i, 12.0 - i, TEST_LOCATION, 800 + i % 4, 37.4, -122.1});
+        }
+        return cursor;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import java.util.Arrays;
+
+/*
+    Checks that location statuses can be read back right away, that only changes are written,
+    and that the statuses of locations that are gone are dropped.
+ */
+public class TestLocationStatusStore extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "94043";
+    private static final String OTHER_LOCATION = "94040";
+
+    private SharedPreferences mPrefs;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = mContext.getSharedPreferences("test_location_status", Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+    }
+
+    public void testStatusVisibleRightAway() {
+        LocationStatusStore store = new LocationStatusStore(mPrefs);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_UNKNOWN,
+                store.getStatus(TEST_LOCATION));
+
+        store.setStatus(TEST_LOCATION, SunshineSyncAdapter.LOCATION_STATUS_OK);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, store.getStatus(TEST_LOCATION));
+
+        store.setStatus(TEST_LOCATION, SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN,
+                store.getStatus(TEST_LOCATION));
+    }
+
+    public void testUnchangedStatusNotWritten() {
+        LocationStatusStore store = new LocationStatusStore(mPrefs);
+        store.setStatus(TEST_LOCATION, SunshineSyncAdapter.LOCATION_STATUS_OK);
+
+        // Anything written from here on goes through the editor and shows up as a new value.
+        mPrefs.edit().putInt(TEST_LOCATION, -1).commit();
+        store.setStatus(TEST_LOCATION, SunshineSyncAdapter.LOCATION_STATUS_OK);
+        assertEquals("Error: an unchanged status was written again",
+                -1, mPrefs.getInt(TEST_LOCATION, 0));
+    }
+
+    public void testRetainOnlyDropsGoneLocations() {
+        LocationStatusStore store = new LocationStatusStore(mPrefs);
+        store.setStatus(TEST_LOCATION, SunshineSyncAdapter.LOCATION_STATUS_OK);
+        store.setStatus(OTHER_LOCATION, SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID);
+
+        store.retainOnly(Arrays.asList(TEST_LOCATION));
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, store.getStatus(TEST_LOCATION));
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_UNKNOWN,
+                store.getStatus(OTHER_LOCATION));
+
+        // A new process reads the same file.
+        LocationStatusStore restarted = new LocationStatusStore(mPrefs);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, restarted.getStatus(TEST_LOCATION));
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_UNKNOWN,
+                restarted.getStatus(OTHER_LOCATION));
+        assertFalse("Error: the dropped status is still in the file",
+                mPrefs.contains(OTHER_LOCATION));
+    }
+}
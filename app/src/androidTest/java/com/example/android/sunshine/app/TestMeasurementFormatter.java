@@ -0,0 +1,135 @@
+package com.example.android.sunshine.app;
+
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.test.AndroidTestCase;
+
+import java.util.Locale;
+import java.util.Random;
+
+/*
+    Checks that MeasurementFormatter writes what the format strings did, in a few locales with
+    their own digits.
+ */
+public class TestMeasurementFormatter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestMeasurementFormatter.class.getSimpleName();
+
+    private static final Locale[] LOCALES = {Locale.US, Locale.GERMANY, new Locale("ar", "EG"),
+            new Locale("fa", "IR"), new Locale("hi", "IN")};
+    private static final int NUM_VALUES = 2000;
+
+    private Locale mDefaultLocale;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultLocale = getLocale();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        setLocale(mDefaultLocale);
+        super.tearDown();
+    }
+
+    public void testMatchesFormatStrings() {
+        Random random = new Random(42);
+        for (Locale locale : LOCALES) {
+            setLocale(locale);
+            MeasurementFormatter formatter = new MeasurementFormatter(mContext);
+            for (int i = 0; i < NUM_VALUES; i++) {
+                // Halves too, since they're where rounding goes wrong.
+                double temperature = i % 2 == 0
+                        ? (random.nextDouble() - 0.5) * 120 : (random.nextInt(240) - 120) / 2.0;
+                float windSpeed = random.nextFloat() * 150;
+                float degrees = random.nextFloat() * 400 - 20;
+                float pressure = 950 + random.nextFloat() * 100;
+                float humidity = random.nextFloat() * 100;
+
+                assertEquals(oldTemperature(temperature, true),
+                        formatter.formatTemperature(temperature, true));
+                assertEquals(oldTemperature(temperature, false),
+                        formatter.formatTemperature(temperature, false));
+                assertEquals(oldWind(windSpeed, degrees, true),
+                        formatter.formatWind(windSpeed, degrees, true));
+                assertEquals(oldWind(windSpeed, degrees, false),
+                        formatter.formatWind(windSpeed, degrees, false));
+                assertEquals(mContext.getString(R.string.format_pressure, pressure),
+                        formatter.formatPressure(pressure));
+                assertEquals(mContext.getString(R.string.format_humidity, humidity),
+                        formatter.formatHumidity(humidity));
+            }
+        }
+    }
+
+    public void testEdgeValues() {
+        MeasurementFormatter formatter = new MeasurementFormatter(mContext);
+        double[] temperatures = {0.0, -0.0, -0.4, 0.5, -0.5, 0.49999999999999994, 1e20,
+                Double.NaN, Double.POSITIVE_INFINITY};
+        for (double temperature : temperatures) {
+            assertEquals("Error: wrong temperature for " + temperature,
+                    oldTemperature(temperature, true),
+                    formatter.formatTemperature(temperature, true));
+        }
+        float[] directions = {0, 22.5f, 67.5f, 337.5f, 359.9f, 360, -45, Float.NaN};
+        for (float degrees : directions) {
+            assertEquals("Error: wrong wind for " + degrees + " degrees",
+                    oldWind(10, degrees, true), formatter.formatWind(10, degrees, true));
+        }
+    }
+
+    // The way Utility formatted these before MeasurementFormatter.
+
+    private String oldTemperature(double temperature, boolean isMetric) {
+        double temp;
+        if (!isMetric) {
+            temp = 9 * temperature / 5 + 32;
+        } else {
+            temp = temperature;
+        }
+        return mContext.getString(R.string.format_temperature, temp);
+    }
+
+    private String oldWind(float windSpeed, float degrees, boolean isMetric) {
+        int windFormat;
+        if (isMetric) {
+            windFormat = R.string.format_wind_kmh;
+        } else {
+            windFormat = R.string.format_wind_mph;
+            windSpeed = .621371192237334f * windSpeed;
+        }
+
+        String direction = "Unknown";
+        if (degrees >= 337.5 || degrees < 22.5) {
+            direction = "N";
+        } else if (degrees >= 22.5 && degrees < 67.5) {
+            direction = "NE";
+        } else if (degrees >= 67.5 && degrees < 112.5) {
+            direction = "E";
+        } else if (degrees >= 112.5 && degrees < 157.5) {
+            direction = "SE";
+        } else if (degrees >= 157.5 && degrees < 202.5) {
+            direction = "S";
+        } else if (degrees >= 202.5 && degrees < 247.5) {
+            direction = "SW";
+        } else if (degrees >= 247.5 && degrees < 292.5) {
+            direction = "W";
+        } else if (degrees >= 292.5 && degrees < 337.5) {
+            direction = "NW";
+        }
+        return String.format(getLocale(), mContext.getString(windFormat), windSpeed, direction);
+    }
+
+    private Locale getLocale() {
+        return mContext.getResources().getConfiguration().locale;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void setLocale(Locale locale) {
+        Resources resources = mContext.getResources();
+        Configuration configuration = new Configuration(resources.getConfiguration());
+        configuration.locale = locale;
+        resources.updateConfiguration(configuration, resources.getDisplayMetrics());
+    }
+}
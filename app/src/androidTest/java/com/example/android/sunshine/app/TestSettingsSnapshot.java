@@ -0,0 +1,125 @@
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Checks that the settings snapshot follows the preferences, and that scrolling a forecast
+    doesn't read them again.
+ */
+public class TestSettingsSnapshot extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSettingsSnapshot.class.getSimpleName();
+
+    private static final int NUM_DAYS = 14;
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mUnits = mPrefs.getString(mUnitsKey, mContext.getString(R.string.pref_units_metric));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().putString(mUnitsKey, mUnits).commit();
+        super.tearDown();
+    }
+
+    public void testPreferenceChangeReachesSnapshot() throws Exception {
+        final boolean wasMetric = Utility.isMetric(mContext);
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(wasMetric
+                ? R.string.pref_units_imperial : R.string.pref_units_metric)).commit();
+
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return Utility.isMetric(mContext) != wasMetric;
+            }
+        }.run();
+    }
+
+    public void testListenersSeeNewSnapshot() throws Exception {
+        final boolean wasMetric = Utility.isMetric(mContext);
+        final CountDownLatch changed = new CountDownLatch(1);
+        final boolean[] isMetric = new boolean[1];
+        SharedPreferences.OnSharedPreferenceChangeListener listener =
+                new SharedPreferences.OnSharedPreferenceChangeListener() {
+                    @Override
+                    public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                        if (key.equals(mUnitsKey)) {
+                            isMetric[0] = Utility.isMetric(mContext);
+                            changed.countDown();
+                        }
+                    }
+                };
+        SettingsSnapshot.registerListener(mContext, listener);
+        try {
+            mPrefs.edit().putString(mUnitsKey, mContext.getString(wasMetric
+                    ? R.string.pref_units_imperial : R.string.pref_units_metric)).commit();
+            assertTrue("Error: the listener wasn't told about the change",
+                    changed.await(5, TimeUnit.SECONDS));
+            assertTrue("Error: the listener was told before the snapshot changed",
+                    isMetric[0] != wasMetric);
+        } finally {
+            SettingsSnapshot.unregisterListener(listener);
+        }
+    }
+
+    /*
+        Each row of the list and the widgets reads the units, the art settings and the location.
+        Scrolling through a forecast should give what the preferences hold without reading them
+        again.
+     */
+    public void testScrollReads() throws Exception {
+        // An earlier test's tearDown may still be on its way to the snapshot.
+        final String expected = readPreferences();
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return expected.equals(readSnapshot());
+            }
+        }.run();
+        int loads = SettingsSnapshot.getLoadCount();
+
+        for (int day = 0; day < NUM_DAYS; day++) {
+            assertEquals(expected, readSnapshot());
+        }
+        assertEquals("Error: scrolling read the preferences again",
+                loads, SettingsSnapshot.getLoadCount());
+    }
+
+    private String readSnapshot() {
+        return Utility.isMetric(mContext) + " " + Utility.usingLocalGraphics(mContext) + " "
+                + Utility.getPreferedImageTypes(mContext) + " "
+                + Utility.getPreferredLocation(mContext);
+    }
+
+    // The reads the same Utility methods made before the snapshot.
+    private String readPreferences() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        boolean isMetric = prefs.getString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(R.string.pref_units_metric))
+                .equals(mContext.getString(R.string.pref_units_metric));
+        String sunshineArtPack = mContext.getString(R.string.pref_art_pack_sunshine);
+        boolean usingLocalGraphics = prefs.getString(
+                mContext.getString(R.string.pref_art_pack_key), sunshineArtPack)
+                .equals(sunshineArtPack);
+        String imageType = prefs.getString(mContext.getString(R.string.pref_type_image),
+                mContext.getString(R.string.pref_type_mono));
+        String location = prefs.getString(mContext.getString(R.string.pref_location_key),
+                mContext.getString(R.string.pref_location_default));
+        return isMetric + " " + usingLocalGraphics + " " + imageType + " " + location;
+    }
+}
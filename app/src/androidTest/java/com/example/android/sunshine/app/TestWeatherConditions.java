@@ -0,0 +1,137 @@
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.Locale;
+
+/*
+    Checks the WeatherConditions catalog against the if-chains Utility used before, for every
+    three digit weather id and both art packs.
+ */
+public class TestWeatherConditions extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherConditions.class.getSimpleName();
+
+    private static final int NUM_WEATHER_IDS = 1000;
+
+    public void testIconResourcesMatch() {
+        for (int weatherId = 0; weatherId < NUM_WEATHER_IDS; weatherId++) {
+            assertEquals("Error: wrong icon for weather id " + weatherId,
+                    chainIconResource(weatherId), WeatherConditions.getIconResource(weatherId));
+        }
+    }
+
+    public void testArtResourcesMatch() {
+        for (int weatherId = 0; weatherId < NUM_WEATHER_IDS; weatherId++) {
+            assertEquals("Error: wrong art for weather id " + weatherId,
+                    chainArtResource(weatherId), WeatherConditions.getArtResource(weatherId));
+        }
+    }
+
+    public void testArtUrlsMatch() {
+        String coloredPath = mContext.getString(R.string.pref_art_pack_sunshine);
+        String monoPath = mContext.getString(R.string.pref_art_pack_cute_dogs);
+        for (int weatherId = 0; weatherId < NUM_WEATHER_IDS; weatherId++) {
+            assertEquals("Error: wrong colored art URL for weather id " + weatherId,
+                    chainArtUrl(coloredPath, weatherId), WeatherConditions.getArtUrl(mContext,
+                            weatherId, WeatherConditions.ART_PACK_COLORED));
+            assertEquals("Error: wrong mono art URL for weather id " + weatherId,
+                    chainArtUrl(monoPath, weatherId), WeatherConditions.getArtUrl(mContext,
+                            weatherId, WeatherConditions.ART_PACK_MONO));
+            assertNull("Error: an art URL without an art pack",
+                    WeatherConditions.getArtUrl(mContext, weatherId,
+                            WeatherConditions.ART_PACK_NONE));
+        }
+    }
+
+    public void testUnknownWeatherIds() {
+        int[] weatherIds = {-1, Integer.MIN_VALUE, NUM_WEATHER_IDS, Integer.MAX_VALUE};
+        for (int weatherId : weatherIds) {
+            assertEquals(-1, WeatherConditions.getIconResource(weatherId));
+            assertEquals(-1, WeatherConditions.getArtResource(weatherId));
+            assertNull(WeatherConditions.getArtUrl(mContext, weatherId,
+                    WeatherConditions.ART_PACK_COLORED));
+        }
+    }
+
+    private static int chainIconResource(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    private static int chainArtResource(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+
+    private static String chainArtUrl(String path, int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return String.format(Locale.US, path, "storm");
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return String.format(Locale.US, path, "light_rain");
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return String.format(Locale.US, path, "rain");
+        } else if (weatherId == 511) {
+            return String.format(Locale.US, path, "snow");
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return String.format(Locale.US, path, "rain");
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return String.format(Locale.US, path, "snow");
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return String.format(Locale.US, path, "fog");
+        } else if (weatherId == 761 || weatherId == 781) {
+            return String.format(Locale.US, path, "storm");
+        } else if (weatherId == 800) {
+            return String.format(Locale.US, path, "clear");
+        } else if (weatherId == 801) {
+            return String.format(Locale.US, path, "light_clouds");
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return String.format(Locale.US, path, "clouds");
+        }
+        return null;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+    Runs the forecast list's loader query while a large multi-location sync is committing in
+    the background.  With a write-ahead log the reads don't wait for the writer's transactions
+    and only ever see whole forecasts.
+ */
+public class TestConcurrentReads extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestConcurrentReads.class.getSimpleName();
+
+    private static final int NUM_LOCATIONS = 200;
+    private static final int NUM_DAYS = 14;
+    private static final String READ_LOCATION = "city-000";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    public void testWriteAheadLoggingEnabled() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        Cursor cursor = db.rawQuery("PRAGMA journal_mode", null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: the database isn't using a write-ahead log",
+                "wal", cursor.getString(0).toLowerCase(Locale.US));
+        cursor.close();
+        dbHelper.close();
+    }
+
+    public void testReadsDuringSyncSeeWholeForecasts() throws Exception {
+        // Give the reader something to find before the writer starts.
+        commitForecast(READ_LOCATION, 0);
+
+        final AtomicReference<Throwable> writerError = new AtomicReference<>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // Two passes, the second one changing every day, so every commit writes.
+                    for (int pass = 1; pass <= 2; pass++) {
+                        for (int i = 0; i < NUM_LOCATIONS; i++) {
+                            commitForecast(String.format(Locale.US, "city-%03d", i), pass);
+                        }
+                    }
+                } catch (Throwable t) {
+                    writerError.set(t);
+                }
+            }
+        }, "SyncWriter");
+
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(READ_LOCATION,
+                TestUtilities.TEST_DATE);
+        int reads = 0;
+
+        writer.start();
+        while (writer.isAlive()) {
+            Cursor cursor = mContext.getContentResolver().query(uri, null, null, null,
+                    WeatherEntry.COLUMN_DATE + " ASC");
+            // A loader reads the whole window, so make the query actually run.
+            int count = cursor.getCount();
+            cursor.close();
+            reads++;
+            assertEquals("Error: the reader saw a partly written forecast", NUM_DAYS, count);
+        }
+        writer.join();
+        if (writerError.get() != null) {
+            throw new AssertionError(writerError.get());
+        }
+        assertTrue("Error: no reads overlapped the sync", reads > 0);
+
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_CHECKPOINT, null, null);
+        assertTrue("Error: checkpointed more frames than the log holds",
+                result.getInt(WeatherContract.RESULT_CHECKPOINTED_FRAMES)
+                        <= result.getInt(WeatherContract.RESULT_LOG_FRAMES));
+    }
+
+    private void commitForecast(String locationSetting, int pass) {
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        location.put(LocationEntry.COLUMN_CITY_NAME, locationSetting);
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+
+        ContentValues[] values = new ContentValues[NUM_DAYS];
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        for (int i = 0; i < NUM_DAYS; i++) {
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + i * millisecondsInADay);
+            weatherValues.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            weatherValues.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + i + pass);
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 65 - i);
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+            weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+            values[i] = weatherValues;
+        }
+
+        Bundle extras = new Bundle();
+        extras.putParcelable(WeatherContract.EXTRA_LOCATION, location);
+        extras.putParcelableArray(WeatherContract.EXTRA_VALUES, values);
+        mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_COMMIT_FORECAST, null, extras);
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Builds databases the way each earlier DATABASE_VERSION created them, upgrades them with
+    WeatherDbHelper and checks that the data survived and the schema ends up exactly as a fresh
+    install's.
+
+    The CREATE statements below are history: they're what shipped, so they must not be
+    changed to follow the contract.  When the schema changes, add the new version's statements
+    instead.
+ */
+public class TestDbMigrations extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbMigrations.class.getSimpleName();
+
+    private static final String MIGRATED_DB = "migration_test.db";
+    private static final String FRESH_DB = "migration_fresh.db";
+
+    private static final String V2_CREATE_LOCATION = "CREATE TABLE location (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_setting TEXT UNIQUE NOT NULL, " +
+            "city_name TEXT NOT NULL, " +
+            "coord_lat REAL NOT NULL, " +
+            "coord_long REAL NOT NULL  );";
+
+    private static final String V3_CREATE_LOCATION = "CREATE TABLE location (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_setting TEXT UNIQUE NOT NULL, " +
+            "city_name TEXT NOT NULL, " +
+            "coord_lat REAL NOT NULL, " +
+            "coord_long REAL NOT NULL, " +
+            "etag TEXT, " +
+            "last_modified TEXT  );";
+
+    private static final String V2_CREATE_WEATHER = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, " +
+            "short_desc TEXT NOT NULL, " +
+            "weather_id INTEGER NOT NULL," +
+            "min REAL NOT NULL, " +
+            "max REAL NOT NULL, " +
+            "humidity REAL NOT NULL, " +
+            "pressure REAL NOT NULL, " +
+            "wind REAL NOT NULL, " +
+            "degrees REAL NOT NULL,  " +
+            "FOREIGN KEY (location_id) REFERENCES location (_id),  " +
+            "UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+
+    private static final String V4_CREATE_SYNC_LOG = "CREATE TABLE sync_log (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_setting TEXT NOT NULL, " +
+            "sync_time INTEGER NOT NULL, " +
+            "http_status INTEGER NOT NULL, " +
+            "content_encoding TEXT, " +
+            "bytes_transferred INTEGER NOT NULL, " +
+            "bytes_uncompressed INTEGER NOT NULL  );";
+
+    private static final String[][] SCHEMAS = {
+            /* 2 */ {V2_CREATE_LOCATION, V2_CREATE_WEATHER},
+            /* 3 */ {V3_CREATE_LOCATION, V2_CREATE_WEATHER},
+            /* 4 */ {V3_CREATE_LOCATION, V2_CREATE_WEATHER, V4_CREATE_SYNC_LOG},
+    };
+    private static final int FIRST_MIGRATED_VERSION = 2;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(MIGRATED_DB);
+        mContext.deleteDatabase(FRESH_DB);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(MIGRATED_DB);
+        mContext.deleteDatabase(FRESH_DB);
+        super.tearDown();
+    }
+
+    public void testMigrationsKeepData() {
+        for (int i = 0; i < SCHEMAS.length; i++) {
+            int version = FIRST_MIGRATED_VERSION + i;
+            mContext.deleteDatabase(MIGRATED_DB);
+            createOldDatabase(version, 3, 14);
+
+            WeatherDbHelper dbHelper = new WeatherDbHelper(mContext, MIGRATED_DB);
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+            assertEquals("Error: locations lost upgrading from version " + version,
+                    3, count(db, WeatherContract.LocationEntry.TABLE_NAME));
+            assertEquals("Error: forecasts lost upgrading from version " + version,
+                    3 * 14, count(db, WeatherContract.WeatherEntry.TABLE_NAME));
+
+            Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME, null,
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                    new String[]{"location-1"}, null, null, null);
+            assertTrue(cursor.moveToFirst());
+            assertEquals("City 1", cursor.getString(cursor.getColumnIndex(
+                    WeatherContract.LocationEntry.COLUMN_CITY_NAME)));
+            cursor.close();
+
+            assertSchemaMatchesFresh("version " + version, db);
+            dbHelper.close();
+        }
+    }
+
+    public void testUnknownVersionIsRebuilt() {
+        // There's no record of what version 1 looked like; it only needs to end up usable.
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(
+                mContext.getDatabasePath(MIGRATED_DB), null);
+        db.execSQL("CREATE TABLE weather (_id INTEGER PRIMARY KEY, date TEXT)");
+        db.setVersion(1);
+        db.close();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext, MIGRATED_DB);
+        db = dbHelper.getWritableDatabase();
+        assertEquals(0, count(db, WeatherContract.WeatherEntry.TABLE_NAME));
+        assertSchemaMatchesFresh("version 1", db);
+        dbHelper.close();
+    }
+
+    public void testLargeDatabaseKeepsAllRows() {
+        final int numLocations = 2000;
+        final int numDays = 14;
+        createOldDatabase(FIRST_MIGRATED_VERSION, numLocations, numDays);
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext, MIGRATED_DB);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        assertEquals(numLocations, count(db, WeatherContract.LocationEntry.TABLE_NAME));
+        assertEquals(numLocations * numDays, count(db, WeatherContract.WeatherEntry.TABLE_NAME));
+        dbHelper.close();
+    }
+
+    private void createOldDatabase(int version, int numLocations, int numDays) {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(
+                mContext.getDatabasePath(MIGRATED_DB), null);
+        db.beginTransaction();
+        try {
+            for (String sql : SCHEMAS[version - FIRST_MIGRATED_VERSION]) {
+                db.execSQL(sql);
+            }
+            long millisecondsInADay = 1000 * 60 * 60 * 24;
+            for (int i = 0; i < numLocations; i++) {
+                ContentValues location = new ContentValues();
+                location.put("location_setting", "location-" + i);
+                location.put("city_name", "City " + i);
+                location.put("coord_lat", 64.7488);
+                location.put("coord_long", -147.353);
+                long locationId = db.insert("location", null, location);
+
+                for (int day = 0; day < numDays; day++) {
+                    ContentValues weather = new ContentValues();
+                    weather.put("location_id", locationId);
+                    weather.put("date", TestUtilities.TEST_DATE + day * millisecondsInADay);
+                    weather.put("short_desc", "Asteroids");
+                    weather.put("weather_id", 321);
+                    weather.put("min", 65);
+                    weather.put("max", 75);
+                    weather.put("humidity", 1.2);
+                    weather.put("pressure", 1.3);
+                    weather.put("wind", 5.5);
+                    weather.put("degrees", 1.1);
+                    db.insert("weather", null, weather);
+                }
+            }
+            db.setVersion(version);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+    }
+
+    private void assertSchemaMatchesFresh(String from, SQLiteDatabase migrated) {
+        WeatherDbHelper freshHelper = new WeatherDbHelper(mContext, FRESH_DB);
+        SQLiteDatabase fresh = freshHelper.getReadableDatabase();
+
+        assertEquals("Error: upgrading from " + from + " left different indexes",
+                describeIndexes(fresh), describeIndexes(migrated));
+        for (String table : new String[]{WeatherContract.LocationEntry.TABLE_NAME,
+                WeatherContract.WeatherEntry.TABLE_NAME, WeatherContract.SyncLogEntry.TABLE_NAME}) {
+            assertEquals("Error: upgrading from " + from + " left a different " + table + " table",
+                    describeTable(fresh, table), describeTable(migrated, table));
+        }
+        freshHelper.close();
+    }
+
+    private static List<String> describeTable(SQLiteDatabase db, String table) {
+        List<String> columns = new ArrayList<>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        while (cursor.moveToNext()) {
+            // name, type, not null, default value, primary key
+            columns.add(cursor.getString(1) + " " + cursor.getString(2) + " "
+                    + cursor.getInt(3) + " " + cursor.getString(4) + " " + cursor.getInt(5));
+        }
+        cursor.close();
+        return columns;
+    }
+
+    private static List<String> describeIndexes(SQLiteDatabase db) {
+        List<String> indexes = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT name, tbl_name FROM sqlite_master " +
+                "WHERE type = 'index' ORDER BY name", null);
+        while (cursor.moveToNext()) {
+            indexes.add(cursor.getString(0) + " on " + cursor.getString(1));
+        }
+        cursor.close();
+        return indexes;
+    }
+
+    private static int count(SQLiteDatabase db, String table) {
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + table, null);
+        cursor.moveToFirst();
+        int count = cursor.getInt(0);
+        cursor.close();
+        return count;
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ComponentCallbacks2;
+import android.content.ContentProviderClient;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks that WeatherProvider answers repeated forecast queries from its cache, that a
+    write only drops the cached results of the location it changed, and that results the
+    cache can't keep aren't copied.
+ */
+public class TestForecastCache extends AndroidTestCase {
+
+    private static final String LOCATION_A = "99705";
+    private static final String LOCATION_B = "94043";
+    private static final int NUM_DAYS = 7;
+    private static final String SORT_BY_DATE = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private ContentProviderClient mClient;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mClient = mContext.getContentResolver().acquireContentProviderClient(
+                WeatherContract.CONTENT_AUTHORITY);
+        deleteAllRecords();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        mClient.release();
+        super.tearDown();
+    }
+
+    public void testRepeatedQueryIsCached() {
+        commitForecast(LOCATION_A, 0);
+
+        int misses = cacheStat(WeatherContract.RESULT_CACHE_MISSES);
+        int hits = cacheStat(WeatherContract.RESULT_CACHE_HITS);
+        assertEquals(NUM_DAYS, queryCount(LOCATION_A));
+        assertEquals(misses + 1, cacheStat(WeatherContract.RESULT_CACHE_MISSES));
+
+        Cursor cursor = query(LOCATION_A);
+        assertEquals(hits + 1, cacheStat(WeatherContract.RESULT_CACHE_HITS));
+        assertTrue(cursor.moveToFirst());
+        assertEquals(65.0, cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MIN_TEMP)));
+        assertEquals(LOCATION_A, cursor.getString(
+                cursor.getColumnIndex(LocationEntry.COLUMN_LOCATION_SETTING)));
+        cursor.close();
+
+        // A different projection is a different result.
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(LOCATION_A, TestUtilities.TEST_DATE),
+                new String[]{WeatherEntry.COLUMN_DATE}, null, null, SORT_BY_DATE);
+        assertEquals(1, cursor.getColumnCount());
+        cursor.close();
+        assertEquals(misses + 2, cacheStat(WeatherContract.RESULT_CACHE_MISSES));
+    }
+
+    public void testCommitInvalidatesOnlyThatLocation() {
+        commitForecast(LOCATION_A, 0);
+        commitForecast(LOCATION_B, 0);
+        queryCount(LOCATION_A);
+        queryCount(LOCATION_B);
+
+        int hits = cacheStat(WeatherContract.RESULT_CACHE_HITS);
+        int misses = cacheStat(WeatherContract.RESULT_CACHE_MISSES);
+        commitForecast(LOCATION_A, 1);
+
+        Cursor cursor = query(LOCATION_A);
+        assertEquals("Error: the changed location was still served from the cache",
+                misses + 1, cacheStat(WeatherContract.RESULT_CACHE_MISSES));
+        assertTrue(cursor.moveToFirst());
+        assertEquals(66.0, cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MIN_TEMP)));
+        cursor.close();
+
+        queryCount(LOCATION_B);
+        assertEquals("Error: the unchanged location was dropped from the cache",
+                hits + 1, cacheStat(WeatherContract.RESULT_CACHE_HITS));
+
+        // Committing the same forecast again changes nothing, so it keeps the cache.
+        commitForecast(LOCATION_A, 1);
+        queryCount(LOCATION_A);
+        assertEquals(hits + 2, cacheStat(WeatherContract.RESULT_CACHE_HITS));
+    }
+
+    public void testDeleteInvalidatesEverything() {
+        commitForecast(LOCATION_A, 0);
+        assertEquals(NUM_DAYS, queryCount(LOCATION_A));
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        assertEquals(0, cacheStat(WeatherContract.RESULT_CACHE_BYTES));
+        assertEquals(0, queryCount(LOCATION_A));
+    }
+
+    public void testTrimMemoryEmptiesCache() {
+        commitForecast(LOCATION_A, 0);
+        queryCount(LOCATION_A);
+        assertTrue(cacheStat(WeatherContract.RESULT_CACHE_BYTES) > 0);
+
+        mClient.getLocalContentProvider().onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(0, cacheStat(WeatherContract.RESULT_CACHE_BYTES));
+    }
+
+    public void testOversizedResultNotCopied() {
+        ForecastCache cache = new ForecastCache(256);
+        MatrixCursor cursor = createCursor(100);
+        Cursor result = cache.put("key", LOCATION_A, cache.getGeneration(), cursor);
+        assertSame("Error: a result too big to cache was copied anyway", cursor, result);
+        assertEquals(-1, result.getPosition());
+        assertFalse(result.isClosed());
+        assertNull(cache.get("key"));
+        result.close();
+    }
+
+    public void testRacedResultNotCopied() {
+        ForecastCache cache = new ForecastCache(ForecastCache.DEFAULT_MAX_BYTES);
+        long generation = cache.getGeneration();
+        // A sync commits while the query runs.
+        cache.invalidate(LOCATION_A);
+        MatrixCursor cursor = createCursor(3);
+        assertSame("Error: a result that can't be cached was copied anyway",
+                cursor, cache.put("key", LOCATION_A, generation, cursor));
+        assertNull(cache.get("key"));
+        cursor.close();
+    }
+
+    public void testCachedResultReadsBack() {
+        ForecastCache cache = new ForecastCache(ForecastCache.DEFAULT_MAX_BYTES);
+        Cursor first = cache.put("key", LOCATION_A, cache.getGeneration(), createCursor(3));
+        Cursor second = cache.get("key");
+        assertNotNull(second);
+        for (Cursor cursor : new Cursor[]{first, second}) {
+            assertEquals(3, cursor.getCount());
+            assertTrue(cursor.moveToPosition(2));
+            assertEquals(2, cursor.getInt(0));
+            assertEquals(Cursor.FIELD_TYPE_FLOAT, cursor.getType(1));
+            assertEquals(67.5, cursor.getDouble(1));
+            assertEquals("day 2", cursor.getString(2));
+            assertTrue(cursor.isNull(3));
+            cursor.close();
+        }
+    }
+
+    private static MatrixCursor createCursor(int rows) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                WeatherEntry._ID, WeatherEntry.COLUMN_MIN_TEMP, WeatherEntry.COLUMN_SHORT_DESC,
+                WeatherEntry.COLUMN_WIND_SPEED});
+        for (int i = 0; i < rows; i++) {
+            cursor.addRow(new Object[]{(long) i, 65.5 + i, "day " + i, null});
+        }
+        return cursor;
+    }
+
+    private int cacheStat(String stat) {
+        return mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_CACHE_STATS, null, null).getInt(stat);
+    }
+
+    private Cursor query(String locationSetting) {
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(locationSetting,
+                TestUtilities.TEST_DATE);
+        return mContext.getContentResolver().query(uri, null, null, null, SORT_BY_DATE);
+    }
+
+    private int queryCount(String locationSetting) {
+        Cursor cursor = query(locationSetting);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private void commitForecast(String locationSetting, int pass) {
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+
+        ContentValues[] values = new ContentValues[NUM_DAYS];
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        for (int i = 0; i < NUM_DAYS; i++) {
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + i * millisecondsInADay);
+            weatherValues.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            weatherValues.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + i);
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 65 + pass);
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+            weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+            values[i] = weatherValues;
+        }
+
+        Bundle extras = new Bundle();
+        extras.putParcelable(WeatherContract.EXTRA_LOCATION, location);
+        extras.putParcelableArray(WeatherContract.EXTRA_VALUES, values);
+        mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_COMMIT_FORECAST, null, extras);
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Random;
+import java.util.TimeZone;
+
+/*
+    Checks WeatherContract.normalizeDate against the Time based version it replaced, for
+    random dates and every hour around each clock change in a spread of time zones.
+ */
+public class TestNormalizeDate extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestNormalizeDate.class.getSimpleName();
+
+    private static final long HOUR_IN_MILLIS = 60 * 60 * 1000L;
+    private static final long DAY_IN_MILLIS = 24 * HOUR_IN_MILLIS;
+    private static final long YEAR_IN_MILLIS = 365 * DAY_IN_MILLIS;
+
+    // Both hemispheres, half and quarter hour offsets, clocks that change at midnight, a
+    // half hour DST, and a day that was skipped altogether.
+    private static final String[] TIME_ZONES = {"UTC", "America/Los_Angeles",
+            "America/New_York", "America/Sao_Paulo", "America/Santiago", "America/Havana",
+            "Europe/London", "Europe/Berlin", "Asia/Tehran", "Asia/Kolkata", "Asia/Kathmandu",
+            "Asia/Tokyo", "Australia/Adelaide", "Australia/Lord_Howe", "Pacific/Apia",
+            "Pacific/Chatham", "Pacific/Kiritimati", "Pacific/Pago_Pago"};
+
+    // From 2010 to 2030.
+    private static final long FIRST_DATE = 1262304000000L;
+    private static final long LAST_DATE = 1893456000000L;
+
+    private static final int NUM_RANDOM_DATES = 2000;
+    private static final int NUM_HISTORY_DAYS = 365;
+
+    private TimeZone mDefaultTimeZone;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultTimeZone = TimeZone.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        setDefaultTimeZone(mDefaultTimeZone);
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testRandomDates() {
+        Random random = new Random(42);
+        for (String id : TIME_ZONES) {
+            setDefaultTimeZone(TimeZone.getTimeZone(id));
+            for (int i = 0; i < NUM_RANDOM_DATES; i++) {
+                long date = FIRST_DATE + (long) (random.nextDouble() * (LAST_DATE - FIRST_DATE));
+                assertNormalizedDate(id, date);
+            }
+        }
+    }
+
+    public void testClockChanges() {
+        for (String id : TIME_ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            setDefaultTimeZone(timeZone);
+            int offset = timeZone.getOffset(FIRST_DATE);
+            for (long hour = FIRST_DATE; hour < LAST_DATE; hour += HOUR_IN_MILLIS) {
+                int nextOffset = timeZone.getOffset(hour);
+                if (nextOffset != offset) {
+                    // Every hour of the two days either side, plus a minute each side of it.
+                    for (long date = hour - 2 * DAY_IN_MILLIS; date < hour + 2 * DAY_IN_MILLIS;
+                         date += HOUR_IN_MILLIS) {
+                        assertNormalizedDate(id, date - 60 * 1000);
+                        assertNormalizedDate(id, date);
+                        assertNormalizedDate(id, date + 60 * 1000);
+                    }
+                    offset = nextOffset;
+                }
+            }
+        }
+    }
+
+    public void testTimeZoneChange() {
+        setDefaultTimeZone(TimeZone.getTimeZone("Asia/Tokyo"));
+        long date = System.currentTimeMillis();
+        long tokyo = WeatherContract.normalizeDate(date);
+
+        // Without being told, normalizeDate keeps the zone it had.
+        TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+        assertEquals(tokyo, WeatherContract.normalizeDate(date));
+
+        WeatherContract.onTimeZoneChanged();
+        assertEquals("Error: normalizeDate didn't follow the time zone change",
+                timeNormalizeDate(date), WeatherContract.normalizeDate(date));
+    }
+
+    public void testBulkInsertYear() {
+        long locationId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] values = new ContentValues[NUM_HISTORY_DAYS];
+        long start = System.currentTimeMillis() - YEAR_IN_MILLIS;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = TestUtilities.createWeatherValues(locationId);
+            values[i].put(WeatherEntry.COLUMN_DATE, start + i * DAY_IN_MILLIS);
+        }
+
+        int inserted = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                values);
+        assertEquals(NUM_HISTORY_DAYS, inserted);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry.COLUMN_DATE}, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(NUM_HISTORY_DAYS, cursor.getCount());
+        for (int i = 0; cursor.moveToNext(); i++) {
+            assertEquals("Error: a bulk inserted date wasn't normalized",
+                    timeNormalizeDate(start + i * DAY_IN_MILLIS), cursor.getLong(0));
+        }
+        cursor.close();
+    }
+
+    private void assertNormalizedDate(String timeZone, long date) {
+        assertEquals("Error: wrong normalized date for " + date + " in " + timeZone,
+                timeNormalizeDate(date), WeatherContract.normalizeDate(date));
+    }
+
+    private static void setDefaultTimeZone(TimeZone timeZone) {
+        TimeZone.setDefault(timeZone);
+        WeatherContract.onTimeZoneChanged();
+    }
+
+    // The way WeatherContract normalized dates before.
+    private static long timeNormalizeDate(long startDate) {
+        Time time = new Time();
+        time.set(startDate);
+        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
+}
@@ -24,11 +24,13 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.CountingContentObserver;
 
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
@@ -423,6 +425,7 @@ public class TestProvider extends AndroidTestCase {
 
 
     static private final int BULK_INSERT_RECORDS_TO_INSERT = 10;
+    static private final String OTHER_LOCATION = "94043";
     static ContentValues[] createBulkInsertWeatherValues(long locationRowId) {
         long currentTestDate = TestUtilities.TEST_DATE;
         long millisecondsInADay = 1000*60*60*24;
@@ -512,4 +515,236 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        The upsert should only write the rows that differ from what's stored, keep the row ids
+        of the ones it does update, and stay silent when nothing changed.
+     */
+    public void testUpsertWeather() {
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] values = createBulkInsertWeatherValues(locationRowId);
+        Bundle result = upsertWeather(values);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, result.getInt(WeatherContract.RESULT_INSERTED));
+        assertEquals(0, result.getInt(WeatherContract.RESULT_UPDATED));
+        assertEquals(0, result.getInt(WeatherContract.RESULT_UNCHANGED));
+        long[] rowIds = getWeatherRowIds();
+
+        // The same forecast again shouldn't write or notify anything.
+        CountingContentObserver observer = CountingContentObserver.create();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, observer);
+        result = upsertWeather(createBulkInsertWeatherValues(locationRowId));
+        assertEquals(0, result.getInt(WeatherContract.RESULT_INSERTED));
+        assertEquals(0, result.getInt(WeatherContract.RESULT_UPDATED));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, result.getInt(WeatherContract.RESULT_UNCHANGED));
+        assertEquals("Error: an unchanged forecast shouldn't notify observers",
+                0, observer.settleAndGetChangeCount(200));
+
+        // Change one day; only that row should be written, and it should keep its id.
+        values = createBulkInsertWeatherValues(locationRowId);
+        values[3].put(WeatherEntry.COLUMN_MAX_TEMP, 100);
+        result = upsertWeather(values);
+        assertEquals(0, result.getInt(WeatherContract.RESULT_INSERTED));
+        assertEquals(1, result.getInt(WeatherContract.RESULT_UPDATED));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 1,
+                result.getInt(WeatherContract.RESULT_UNCHANGED));
+        assertEquals("Error: a changed forecast should notify observers once",
+                1, observer.settleAndGetChangeCount(200));
+        mContext.getContentResolver().unregisterContentObserver(observer);
+        observer.quit();
+
+        long[] rowIdsAfter = getWeatherRowIds();
+        assertEquals(rowIds.length, rowIdsAfter.length);
+        for (int i = 0; i < rowIds.length; i++) {
+            assertEquals("Error: upsert changed the id of row " + i, rowIds[i], rowIdsAfter[i]);
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testUpsertWeather.  Error validating WeatherEntry " + i,
+                    cursor, values[i]);
+        }
+        cursor.close();
+    }
+
+    /*
+        A forecast commit writes the location, its weather and the purge of past days in one
+        transaction.  Observers of the location's weather should hear about it exactly once,
+        and not at all when the commit changes nothing.
+     */
+    public void testCommitForecast() {
+        CountingContentObserver observer = CountingContentObserver.create();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION), true, observer);
+
+        Bundle result = commitForecast(createBulkInsertWeatherValues(0), null);
+        long locationRowId = result.getLong(WeatherContract.RESULT_LOCATION_ID);
+        assertTrue("Error: the location wasn't stored", locationRowId > 0);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, result.getInt(WeatherContract.RESULT_INSERTED));
+        assertEquals("Error: a commit should notify exactly once",
+                1, observer.settleAndGetChangeCount(200));
+
+        // Committing the same forecast again changes nothing, so nobody should hear about it.
+        result = commitForecast(createBulkInsertWeatherValues(0), null);
+        assertEquals(locationRowId, result.getLong(WeatherContract.RESULT_LOCATION_ID));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, result.getInt(WeatherContract.RESULT_UNCHANGED));
+        assertEquals("Error: an unchanged commit shouldn't notify",
+                1, observer.settleAndGetChangeCount(200));
+
+        // A 200 with a new ETag but the same forecast: the validator is stored, nothing else.
+        ContentValues location = TestUtilities.createNorthPoleLocationValues();
+        location.put(LocationEntry.COLUMN_ETAG, "\"v2\"");
+        result = commitForecast(createBulkInsertWeatherValues(0), null, location);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, result.getInt(WeatherContract.RESULT_UNCHANGED));
+        assertEquals("Error: a new ETag alone shouldn't notify",
+                1, observer.settleAndGetChangeCount(200));
+        Cursor locationCursor = mContext.getContentResolver().query(
+                LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry.COLUMN_ETAG},
+                LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationRowId)},
+                null);
+        assertTrue(locationCursor.moveToFirst());
+        assertEquals("Error: the new ETag wasn't stored", "\"v2\"", locationCursor.getString(0));
+        locationCursor.close();
+
+        // Purge the first three days while updating another one: still a single notification.
+        ContentValues[] values = createBulkInsertWeatherValues(0);
+        values[5].put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        result = commitForecast(values, TestUtilities.TEST_DATE + 2 * millisecondsInADay);
+        assertEquals(1, result.getInt(WeatherContract.RESULT_UPDATED));
+        assertEquals(3, result.getInt(WeatherContract.RESULT_PURGED));
+        assertEquals("Error: a commit should notify exactly once",
+                2, observer.settleAndGetChangeCount(200));
+
+        mContext.getContentResolver().unregisterContentObserver(observer);
+        observer.quit();
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                new String[]{Long.toString(locationRowId)},
+                null
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 3, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        Every kind of write to one location's weather should reach the observers of that
+        location, but not a loader watching another location, nor one watching a day the
+        write didn't touch.
+     */
+    public void testNotificationsStayWithinLocation() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues otherLocation = TestUtilities.createNorthPoleLocationValues();
+        otherLocation.put(LocationEntry.COLUMN_LOCATION_SETTING, OTHER_LOCATION);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, otherLocation);
+
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        CountingContentObserver listObserver = CountingContentObserver.create();
+        CountingContentObserver dayObserver = CountingContentObserver.create();
+        CountingContentObserver otherObserver = CountingContentObserver.create();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION), true,
+                listObserver);
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE + millisecondsInADay), true, dayObserver);
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation(OTHER_LOCATION), true, otherObserver);
+
+        // A single day only reaches the observers of that day.
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherValues(locationRowId));
+        assertEquals(1, listObserver.settleAndGetChangeCount(200));
+        assertEquals("Error: inserting one day woke the observer of another",
+                0, dayObserver.settleAndGetChangeCount(0));
+
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        assertEquals(2, listObserver.settleAndGetChangeCount(200));
+        assertEquals(1, dayObserver.settleAndGetChangeCount(0));
+
+        ContentValues[] values = createBulkInsertWeatherValues(locationRowId);
+        values[1].put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        commitForecast(values, null);
+        assertEquals(3, listObserver.settleAndGetChangeCount(200));
+        assertEquals(2, dayObserver.settleAndGetChangeCount(0));
+
+        ContentValues update = new ContentValues();
+        update.put(WeatherEntry.COLUMN_SHORT_DESC, "Comets");
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, update,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(locationRowId)});
+        assertEquals(4, listObserver.settleAndGetChangeCount(200));
+        assertEquals(3, dayObserver.settleAndGetChangeCount(0));
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(locationRowId)});
+        assertEquals(5, listObserver.settleAndGetChangeCount(200));
+        assertEquals(4, dayObserver.settleAndGetChangeCount(0));
+
+        assertEquals("Error: writes to " + TestUtilities.TEST_LOCATION + " woke the observer of "
+                + OTHER_LOCATION, 0, otherObserver.settleAndGetChangeCount(0));
+
+        for (CountingContentObserver observer : new CountingContentObserver[]{
+                listObserver, dayObserver, otherObserver}) {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+            observer.quit();
+        }
+    }
+
+    private Bundle commitForecast(ContentValues[] values, Long purgeBefore) {
+        return commitForecast(values, purgeBefore, TestUtilities.createNorthPoleLocationValues());
+    }
+
+    private Bundle commitForecast(ContentValues[] values, Long purgeBefore,
+                                  ContentValues location) {
+        // The provider fills in the location id itself.
+        for (ContentValues value : values) {
+            value.remove(WeatherEntry.COLUMN_LOC_KEY);
+        }
+        Bundle extras = new Bundle();
+        extras.putParcelable(WeatherContract.EXTRA_LOCATION, location);
+        extras.putParcelableArray(WeatherContract.EXTRA_VALUES, values);
+        if (purgeBefore != null) {
+            extras.putLong(WeatherContract.EXTRA_PURGE_BEFORE, purgeBefore);
+        }
+        return mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_COMMIT_FORECAST, null, extras);
+    }
+
+    private Bundle upsertWeather(ContentValues[] values) {
+        Bundle extras = new Bundle();
+        extras.putParcelableArray(WeatherContract.EXTRA_VALUES, values);
+        return mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_UPSERT_WEATHER, null, extras);
+    }
+
+    private long[] getWeatherRowIds() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return ids;
+    }
 }
@@ -0,0 +1,137 @@
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SyncLogEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Runs EXPLAIN QUERY PLAN over the SQL behind every WeatherProvider route, so that a schema
+    change that leaves one of them scanning a whole table, or sorting in a temporary b-tree,
+    fails here instead of quietly slowing the app down.
+ */
+public class TestQueryPlans extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestQueryPlans.class.getSimpleName();
+
+    private static final String SORT_BY_DATE = WeatherEntry.COLUMN_DATE + " ASC";
+    // The unique index SQLite creates for location.location_setting.
+    private static final String LOCATION_SETTING_INDEX = "sqlite_autoindex_location_1";
+
+    private WeatherDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDbHelper = new WeatherDbHelper(mContext);
+        mDb = mDbHelper.getReadableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        super.tearDown();
+    }
+
+    // "weather/*", as used by the forecast list and both widgets.
+    public void testWeatherWithLocationAndStartDate() {
+        String sql = WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                WeatherProvider.sLocationSettingWithStartDateSelection, null, null,
+                SORT_BY_DATE, null);
+        assertIndexedPlan("WEATHER_WITH_LOCATION", sql, new String[]{"94043", "0"},
+                LOCATION_SETTING_INDEX, WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE);
+    }
+
+    // "weather/*" without a start date.
+    public void testWeatherWithLocation() {
+        String sql = WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                WeatherProvider.sLocationSettingSelection, null, null, SORT_BY_DATE, null);
+        assertIndexedPlan("WEATHER_WITH_LOCATION", sql, new String[]{"94043"},
+                LOCATION_SETTING_INDEX, WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE);
+    }
+
+    // "weather/*/#", as used by the detail view.
+    public void testWeatherWithLocationAndDate() {
+        String sql = WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                WeatherProvider.sLocationSettingAndDaySelection, null, null, null, null);
+        assertIndexedPlan("WEATHER_WITH_LOCATION_AND_DATE", sql, new String[]{"94043", "0"},
+                LOCATION_SETTING_INDEX);
+    }
+
+    // "weather", with the selections the provider and the sync adapter use for writes.
+    public void testWeather() {
+        String sql = SQLiteQueryBuilder.buildQueryString(false, WeatherEntry.TABLE_NAME, null,
+                WeatherProvider.sLocationIdAndDaySelection, null, null, null, null);
+        assertIndexedPlan("WEATHER", sql, new String[]{"1", "0"});
+
+        sql = SQLiteQueryBuilder.buildQueryString(false, WeatherEntry.TABLE_NAME, null,
+                WeatherProvider.sLocationIdAndPastDaySelection, null, null, null, null);
+        assertIndexedPlan("WEATHER", sql, new String[]{"1", "0"},
+                WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE);
+    }
+
+    // "location", looked up by setting.
+    public void testLocation() {
+        String sql = SQLiteQueryBuilder.buildQueryString(false, LocationEntry.TABLE_NAME, null,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", null, null, null, null);
+        assertIndexedPlan("LOCATION", sql, new String[]{"94043"}, LOCATION_SETTING_INDEX);
+    }
+
+    // "sync_log", pruned by age.
+    public void testSyncLog() {
+        String sql = SQLiteQueryBuilder.buildQueryString(false, SyncLogEntry.TABLE_NAME, null,
+                SyncLogEntry.COLUMN_SYNC_TIME + " < ?", null, null, null, null);
+        assertIndexedPlan("SYNC_LOG", sql, new String[]{"0"},
+                WeatherDbHelper.INDEX_SYNC_LOG_SYNC_TIME);
+    }
+
+    /*
+        Checks that no step of the plan scans a table or index, builds an automatic index or
+        sorts in a temporary b-tree, and that each of the expected indexes is used.
+     */
+    private void assertIndexedPlan(String route, String sql, String[] args,
+                                   String... expectedIndexes) {
+        List<String> plan = explain(sql, args);
+        Log.d(LOG_TAG, route + ": " + plan);
+
+        assertFalse("Error: no query plan for " + route, plan.isEmpty());
+        for (String detail : plan) {
+            assertFalse("Error: " + route + " scans: " + detail, detail.startsWith("SCAN"));
+            assertFalse("Error: " + route + " builds an automatic index: " + detail,
+                    detail.contains("AUTOMATIC"));
+            assertFalse("Error: " + route + " sorts in a temporary b-tree: " + detail,
+                    detail.contains("TEMP B-TREE"));
+        }
+        for (String index : expectedIndexes) {
+            boolean used = false;
+            for (String detail : plan) {
+                if (detail.contains("INDEX " + index)) {
+                    used = true;
+                    break;
+                }
+            }
+            assertTrue("Error: " + route + " doesn't use " + index + ": " + plan, used);
+        }
+    }
+
+    private List<String> explain(String sql, String[] args) {
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        List<String> details = new ArrayList<>();
+        int detailIndex = cursor.getColumnIndex("detail");
+        while (cursor.moveToNext()) {
+            details.add(cursor.getString(detailIndex));
+        }
+        cursor.close();
+        return details;
+    }
+}
@@ -36,6 +36,8 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/sync_log"
+    private static final Uri TEST_SYNC_LOG_DIR = WeatherContract.SyncLogEntry.CONTENT_URI;
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -53,5 +55,7 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The SYNC LOG URI was matched incorrectly.",
+                testMatcher.match(TEST_SYNC_LOG_DIR), WeatherProvider.SYNC_LOG);
     }
 }
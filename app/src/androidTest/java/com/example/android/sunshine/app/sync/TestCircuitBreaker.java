@@ -0,0 +1,127 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SyncResult;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.FakeHttpServer;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Random;
+
+/*
+    Checks the circuit breaker's backoff and state on its own, then runs the sync adapter
+    against a local server that's down and checks it stops asking, and what it tells the sync
+    framework.
+ */
+public class TestCircuitBreaker extends AndroidTestCase {
+
+    private static final String ENDPOINT = "forecast.example.com";
+    private static final String TEST_LOCATION = "94043";
+
+    private SharedPreferences mPrefs;
+    private long mNow = 1000000000000L;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = mContext.getSharedPreferences("test_circuit_breaker", Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+    }
+
+    private SyncCircuitBreaker createBreaker() {
+        return new SyncCircuitBreaker(mPrefs, new Random(42)) {
+            @Override
+            long currentTimeMillis() {
+                return mNow;
+            }
+        };
+    }
+
+    public void testOpensAfterRepeatedFailures() {
+        SyncCircuitBreaker breaker = createBreaker();
+        for (int i = 1; i < SyncCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            breaker.recordFailure(ENDPOINT, "IOException");
+            assertTrue("Error: the breaker opened after " + i + " failures",
+                    breaker.allowRequest(ENDPOINT));
+        }
+        long retryAt = breaker.recordFailure(ENDPOINT, "IOException");
+        assertTrue(breaker.isOpen(ENDPOINT));
+        assertFalse("Error: an open breaker let a request through",
+                breaker.allowRequest(ENDPOINT));
+
+        // Once the retry time comes, one request gets to try the server.
+        mNow = retryAt;
+        assertTrue(breaker.allowRequest(ENDPOINT));
+        assertFalse("Error: more than one request tried the server",
+                breaker.allowRequest(ENDPOINT));
+
+        breaker.recordSuccess(ENDPOINT);
+        assertFalse(breaker.isOpen(ENDPOINT));
+        assertTrue(breaker.allowRequest(ENDPOINT));
+        assertEquals(0, breaker.getFailures(ENDPOINT));
+    }
+
+    public void testBackoffDoublesWithJitter() {
+        SyncCircuitBreaker breaker = createBreaker();
+        for (int failures = 1; failures <= 40; failures++) {
+            long backoff = Math.min(SyncCircuitBreaker.MAX_BACKOFF_MILLIS,
+                    SyncCircuitBreaker.BASE_BACKOFF_MILLIS << Math.min(failures - 1, 30));
+            long delay = breaker.recordFailure(ENDPOINT, "cod 500") - mNow;
+            assertTrue("Error: retry after " + failures + " failures was too soon: " + delay,
+                    delay >= backoff / 2);
+            assertTrue("Error: retry after " + failures + " failures was too late: " + delay,
+                    delay <= backoff);
+        }
+    }
+
+    public void testStateSurvivesRestart() {
+        SyncCircuitBreaker breaker = createBreaker();
+        for (int i = 0; i < SyncCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            breaker.recordFailure(ENDPOINT, "cod 502");
+        }
+
+        // A new process reads the same preferences.
+        SyncCircuitBreaker restarted = createBreaker();
+        assertTrue(restarted.isOpen(ENDPOINT));
+        assertFalse(restarted.allowRequest(ENDPOINT));
+        assertEquals("cod 502", restarted.getLastError(ENDPOINT));
+    }
+
+    public void testSyncStopsAskingFailingServer() throws Exception {
+        FakeHttpServer server = new FakeHttpServer(new FakeHttpServer.Handler() {
+            @Override
+            public FakeHttpServer.Response handle(FakeHttpServer.Request request)
+                    throws IOException {
+                return new FakeHttpServer.Response(HttpURLConnection.HTTP_UNAVAILABLE,
+                        new byte[0]);
+            }
+        });
+        server.start();
+        String originalBaseUrl = SunshineSyncAdapter.sForecastBaseUrl;
+        SunshineSyncAdapter.sForecastBaseUrl = server.getUrl("/data/2.5/forecast/daily?");
+        String endpoint = SunshineSyncAdapter.getEndpoint();
+        SyncCircuitBreaker breaker = SyncCircuitBreaker.getInstance(mContext);
+        try {
+            SunshineSyncAdapter adapter = new SunshineSyncAdapter(mContext, false);
+            SyncResult syncResult = new SyncResult();
+            for (int i = 0; i < SyncCircuitBreaker.FAILURE_THRESHOLD + 3; i++) {
+                adapter.syncLocation(TEST_LOCATION, syncResult);
+            }
+
+            assertEquals("Error: the sync kept asking a server that was down",
+                    SyncCircuitBreaker.FAILURE_THRESHOLD, server.getRequestCount());
+            assertEquals(SyncCircuitBreaker.FAILURE_THRESHOLD,
+                    syncResult.stats.numIoExceptions);
+            assertTrue("Error: the sync framework wasn't asked to back off",
+                    syncResult.delayUntil > System.currentTimeMillis() / 1000);
+            assertTrue(syncResult.hasSoftError());
+        } finally {
+            breaker.recordSuccess(endpoint);
+            SunshineSyncAdapter.sForecastBaseUrl = originalBaseUrl;
+            server.shutdown();
+        }
+    }
+}
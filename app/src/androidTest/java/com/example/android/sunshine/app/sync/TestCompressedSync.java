@@ -0,0 +1,100 @@
+package com.example.android.sunshine.app.sync;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.SyncLogEntry;
+import com.example.android.sunshine.app.utils.FakeHttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.zip.GZIPOutputStream;
+
+/*
+    Checks that the sync adapter negotiates gzip, decompresses the body as a stream, and
+    records both byte counts in the sync log.
+ */
+public class TestCompressedSync extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestCompressedSync.class.getSimpleName();
+
+    private static final String TEST_LOCATION = "94043";
+
+    private FakeHttpServer mServer;
+    private String mOriginalBaseUrl;
+    private byte[] mBody;
+    private byte[] mCompressedBody;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(SyncLogEntry.CONTENT_URI, null, null);
+
+        mBody = TestForecastParser.createForecastJson("Mountain View", 14).getBytes("UTF-8");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(mBody);
+        gzip.close();
+        mCompressedBody = out.toByteArray();
+
+        mServer = new FakeHttpServer(new FakeHttpServer.Handler() {
+            @Override
+            public FakeHttpServer.Response handle(FakeHttpServer.Request request) throws IOException {
+                String acceptEncoding = request.getHeader("Accept-Encoding");
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    return new FakeHttpServer.Response(HttpURLConnection.HTTP_OK, mCompressedBody)
+                            .header("Content-Encoding", "gzip");
+                }
+                return new FakeHttpServer.Response(HttpURLConnection.HTTP_OK, mBody);
+            }
+        });
+        mServer.start();
+
+        mOriginalBaseUrl = SunshineSyncAdapter.sForecastBaseUrl;
+        SunshineSyncAdapter.sForecastBaseUrl = mServer.getUrl("/data/2.5/forecast/daily?");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SunshineSyncAdapter.sForecastBaseUrl = mOriginalBaseUrl;
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testGzipBodyIsDecodedAndLogged() {
+        new SunshineSyncAdapter(mContext, false).syncLocation(TEST_LOCATION);
+
+        Cursor weatherCursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("Error: the gzipped forecast wasn't stored", 14, weatherCursor.getCount());
+        weatherCursor.close();
+
+        Cursor logCursor = mContext.getContentResolver().query(
+                SyncLogEntry.CONTENT_URI,
+                new String[]{
+                        SyncLogEntry.COLUMN_LOCATION_SETTING,
+                        SyncLogEntry.COLUMN_HTTP_STATUS,
+                        SyncLogEntry.COLUMN_CONTENT_ENCODING,
+                        SyncLogEntry.COLUMN_BYTES_TRANSFERRED,
+                        SyncLogEntry.COLUMN_BYTES_UNCOMPRESSED},
+                null,
+                null,
+                null);
+        assertTrue("Error: the sync wasn't logged", logCursor.moveToFirst());
+        assertEquals(TEST_LOCATION, logCursor.getString(0));
+        assertEquals(HttpURLConnection.HTTP_OK, logCursor.getInt(1));
+        assertEquals("gzip", logCursor.getString(2));
+        assertEquals(mCompressedBody.length, logCursor.getLong(3));
+        assertEquals(mBody.length, logCursor.getLong(4));
+        assertFalse("Error: one request should log one entry", logCursor.moveToNext());
+        logCursor.close();
+
+        Log.i(LOG_TAG, "gzip: " + mCompressedBody.length + " bytes transferred for "
+                + mBody.length + " bytes of forecast");
+    }
+}
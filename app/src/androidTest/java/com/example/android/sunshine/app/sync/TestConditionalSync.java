@@ -0,0 +1,117 @@
+package com.example.android.sunshine.app.sync;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.CountingContentObserver;
+import com.example.android.sunshine.app.utils.FakeHttpServer;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+/*
+    Runs the sync adapter against a local server that honours If-None-Match, and checks that
+    an unchanged forecast costs neither body bytes nor database writes.
+ */
+public class TestConditionalSync extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestConditionalSync.class.getSimpleName();
+
+    private static final String TEST_LOCATION = "94043";
+    private static final String ETAG = "\"forecast-v1\"";
+    private static final String LAST_MODIFIED = "Sat, 20 Dec 2014 00:00:00 GMT";
+
+    private FakeHttpServer mServer;
+    private String mOriginalBaseUrl;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+
+        final byte[] body = TestForecastParser.createForecastJson("Mountain View", 14)
+                .getBytes("UTF-8");
+        mServer = new FakeHttpServer(new FakeHttpServer.Handler() {
+            @Override
+            public FakeHttpServer.Response handle(FakeHttpServer.Request request) throws IOException {
+                if (ETAG.equals(request.getHeader("If-None-Match"))) {
+                    return new FakeHttpServer.Response(HttpURLConnection.HTTP_NOT_MODIFIED, null)
+                            .header("ETag", ETAG);
+                }
+                return new FakeHttpServer.Response(HttpURLConnection.HTTP_OK, body)
+                        .header("Content-Type", "application/json; charset=utf-8")
+                        .header("ETag", ETAG)
+                        .header("Last-Modified", LAST_MODIFIED);
+            }
+        });
+        mServer.start();
+
+        mOriginalBaseUrl = SunshineSyncAdapter.sForecastBaseUrl;
+        SunshineSyncAdapter.sForecastBaseUrl = mServer.getUrl("/data/2.5/forecast/daily?");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SunshineSyncAdapter.sForecastBaseUrl = mOriginalBaseUrl;
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testNotModifiedSkipsParseAndWrites() {
+        SunshineSyncAdapter adapter = new SunshineSyncAdapter(mContext, false);
+
+        // The first sync has nothing to validate against, so it's a full download.
+        adapter.syncLocation(TEST_LOCATION);
+        long fullBytes = mServer.getBodyBytesSent();
+        assertTrue("Error: the first sync should download the forecast", fullBytes > 0);
+
+        String[] validators = adapter.getLocationValidators(TEST_LOCATION);
+        assertEquals("Error: ETag wasn't stored with the location", ETAG, validators[0]);
+        assertEquals("Error: Last-Modified wasn't stored with the location",
+                LAST_MODIFIED, validators[1]);
+
+        long[] rowIds = getWeatherRowIds();
+        assertEquals(14, rowIds.length);
+
+        CountingContentObserver observer = CountingContentObserver.create();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherContract.BASE_CONTENT_URI, true, observer);
+
+        // The second sync should be answered with a 304 and leave the database alone.
+        adapter.syncLocation(TEST_LOCATION);
+        int writes = observer.settleAndGetChangeCount(500);
+        mContext.getContentResolver().unregisterContentObserver(observer);
+        observer.quit();
+
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals("Error: a 304 shouldn't carry a body", fullBytes, mServer.getBodyBytesSent());
+        assertEquals("Error: a 304 shouldn't write to the database", 0, writes);
+
+        long[] rowIdsAfter = getWeatherRowIds();
+        assertEquals(rowIds.length, rowIdsAfter.length);
+        for (int i = 0; i < rowIds.length; i++) {
+            assertEquals("Error: weather rows were rewritten", rowIds[i], rowIdsAfter[i]);
+        }
+
+        Log.i(LOG_TAG, "304 saved " + fullBytes + " body bytes and " + (rowIds.length + 1)
+                + " database writes");
+    }
+
+    private long[] getWeatherRowIds() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[]{WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return ids;
+    }
+}
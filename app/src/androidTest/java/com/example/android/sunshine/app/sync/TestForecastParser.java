@@ -0,0 +1,165 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.Locale;
+
+/*
+    Checks that the streaming ForecastParser reads the same forecast as the old
+    StringBuffer + JSONObject path, on large 16-day payloads.
+ */
+public class TestForecastParser extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastParser.class.getSimpleName();
+
+    private static final int NUM_DAYS = 16;
+
+    /*
+        Builds a payload shaped like OpenWeatherMap's forecast/daily response, including the
+        fields we skip, so that the parser has to step over them.
+     */
+    static String createForecastJson(String cityName, int numDays) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"city\":{\"id\":5375480,\"name\":\"").append(cityName).append("\",")
+                .append("\"coord\":{\"lon\":-122.0838,\"lat\":37.386051},")
+                .append("\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0123,\"cnt\":").append(numDays)
+                .append(",\"list\":[");
+        for (int i = 0; i < numDays; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(String.format(Locale.US,
+                    "{\"dt\":%d,\"temp\":{\"day\":%.2f,\"min\":%.2f,\"max\":%.2f,\"night\":%.2f," +
+                            "\"eve\":%.2f,\"morn\":%.2f},\"pressure\":%.2f,\"humidity\":%d," +
+                            "\"weather\":[{\"id\":%d,\"main\":\"%s\",\"description\":\"%s\"," +
+                            "\"icon\":\"10d\"}],\"speed\":%.2f,\"deg\":%d,\"clouds\":%d," +
+                            "\"rain\":%.2f}",
+                    1419033600L + i * 86400L, 15.0 + i, 10.0 - i * 0.5, 20.0 + i * 0.25,
+                    9.5, 14.0, 11.0, 1013.25 - i, 60 + i, 500 + (i % 5),
+                    i % 2 == 0 ? "Rain" : "Clouds", "light rain", 3.5 + i * 0.1,
+                    (i * 45) % 360, 20 + i, 0.5 * i));
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    /*
+        The forecast parse as it used to be done in SunshineSyncAdapter: read the whole body
+        into a StringBuffer, build a JSONObject tree and copy the fields out of it.
+     */
+    static ForecastParser.Forecast parseWithJsonObject(InputStream inputStream)
+            throws IOException, JSONException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+        StringBuffer buffer = new StringBuffer();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line + "\n");
+        }
+
+        ForecastParser.Forecast forecast = new ForecastParser.Forecast();
+        JSONObject forecastJson = new JSONObject(buffer.toString());
+        if (forecastJson.has("cod")) {
+            forecast.code = forecastJson.getInt("cod");
+            if (forecast.code != HttpURLConnection.HTTP_OK) {
+                return forecast;
+            }
+        }
+
+        JSONArray weatherArray = forecastJson.getJSONArray("list");
+        JSONObject cityJson = forecastJson.getJSONObject("city");
+        forecast.cityName = cityJson.getString("name");
+        JSONObject cityCoord = cityJson.getJSONObject("coord");
+        forecast.cityLatitude = cityCoord.getDouble("lat");
+        forecast.cityLongitude = cityCoord.getDouble("lon");
+
+        for (int i = 0; i < weatherArray.length(); i++) {
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+            JSONObject weatherObject = dayForecast.getJSONArray("weather").getJSONObject(0);
+            JSONObject temperatureObject = dayForecast.getJSONObject("temp");
+            forecast.days.add(new ForecastParser.DayForecast(
+                    dayForecast.getDouble("pressure"),
+                    dayForecast.getInt("humidity"),
+                    dayForecast.getDouble("speed"),
+                    dayForecast.getDouble("deg"),
+                    temperatureObject.getDouble("max"),
+                    temperatureObject.getDouble("min"),
+                    weatherObject.getString("main"),
+                    weatherObject.getInt("id")));
+        }
+        return forecast;
+    }
+
+    private static ForecastParser.Forecast parse(String json) throws Exception {
+        return ForecastParser.parse(new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+
+    public void testParseMatchesJsonObject() throws Exception {
+        String json = createForecastJson("Mountain View", NUM_DAYS);
+        ForecastParser.Forecast expected =
+                parseWithJsonObject(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        ForecastParser.Forecast actual = parse(json);
+
+        assertEquals(HttpURLConnection.HTTP_OK, actual.code);
+        assertEquals(expected.cityName, actual.cityName);
+        assertEquals(expected.cityLatitude, actual.cityLatitude);
+        assertEquals(expected.cityLongitude, actual.cityLongitude);
+        assertEquals(expected.days.size(), actual.days.size());
+        for (int i = 0; i < expected.days.size(); i++) {
+            ForecastParser.DayForecast e = expected.days.get(i);
+            ForecastParser.DayForecast a = actual.days.get(i);
+            String error = "Error: day " + i + " doesn't match the JSONObject parse";
+            assertEquals(error, e.pressure, a.pressure);
+            assertEquals(error, e.humidity, a.humidity);
+            assertEquals(error, e.windSpeed, a.windSpeed);
+            assertEquals(error, e.windDirection, a.windDirection);
+            assertEquals(error, e.high, a.high);
+            assertEquals(error, e.low, a.low);
+            assertEquals(error, e.description, a.description);
+            assertEquals(error, e.weatherId, a.weatherId);
+        }
+    }
+
+    public void testErrorCodes() throws Exception {
+        ForecastParser.Forecast notFound = parse("{\"cod\":\"404\",\"message\":\"city not found\"}");
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, notFound.code);
+
+        ForecastParser.Forecast serverError = parse("{\"message\":\"oops\",\"cod\":500}");
+        assertEquals(HttpURLConnection.HTTP_INTERNAL_ERROR, serverError.code);
+    }
+
+    public void testEmptyStreamIsIOException() throws Exception {
+        try {
+            parse("");
+            fail("Error: an empty stream should be reported as an IOException");
+        } catch (IOException expected) {
+            // The sync adapter maps this to LOCATION_STATUS_SERVER_DOWN
+        }
+    }
+
+    public void testInvalidPayloadIsJSONException() throws Exception {
+        String[] invalid = {
+                "<html>Bad gateway</html>",
+                "{\"cod\":\"200\",\"list\":[{\"pressure\":1000}]",
+                "{\"cod\":\"200\",\"city\":{\"name\":\"x\",\"coord\":{\"lat\":1,\"lon\":2}}}",
+                "{\"cod\":\"abc\"}",
+                "{\"city\":{\"name\":\"x\",\"coord\":{\"lat\":1,\"lon\":2}},\"list\":[{}]}"
+        };
+        for (String json : invalid) {
+            try {
+                parse(json);
+                fail("Error: expected a JSONException for " + json);
+            } catch (JSONException expected) {
+                // The sync adapter maps this to LOCATION_STATUS_SERVER_INVALID
+            }
+        }
+    }
+}
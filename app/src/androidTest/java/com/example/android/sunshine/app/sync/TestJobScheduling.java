@@ -0,0 +1,217 @@
+package com.example.android.sunshine.app.sync;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Checks that each job asks JobScheduler for the network and device state it should, that
+    the scheduler picked in settings is the one the periodic work ends up on, and that the
+    two maintenance jobs only maintain the history once between them.  The maintenance runs
+    on this test's own location and preferences, so the app's history is left as it is.
+ */
+public class TestJobScheduling extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "99705";
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private SharedPreferences mPrefs;
+    private SharedPreferences mMaintenancePrefs;
+    private long mLocationId = -1;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mMaintenancePrefs =
+                mContext.getSharedPreferences("test_maintenance", Context.MODE_PRIVATE);
+        mMaintenancePrefs.edit().clear().commit();
+        SunshineJobScheduler.cancelJobs(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SunshineJobScheduler.cancelJobs(mContext);
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                new String[]{Long.toString(mLocationId)});
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{TEST_LOCATION});
+        super.tearDown();
+    }
+
+    public void testForecastRefreshNeedsAnyNetwork() {
+        JobInfo job = SunshineJobScheduler.buildForecastRefreshJob(mContext,
+                SunshineSyncAdapter.SYNC_INTERVAL, SunshineSyncAdapter.SYNC_FLEXTIME);
+        assertService(job);
+        assertEquals(JobInfo.NETWORK_TYPE_ANY, job.getNetworkType());
+        assertFalse(job.isRequireCharging());
+        assertFalse(job.isRequireDeviceIdle());
+        assertTrue(job.isPeriodic());
+        assertEquals(SunshineSyncAdapter.SYNC_INTERVAL * 1000L, job.getIntervalMillis());
+        assertTrue("Error: the forecast refresh wouldn't survive a reboot", job.isPersisted());
+    }
+
+    public void testArtPrefetchPrefersUnmetered() {
+        JobInfo job = SunshineJobScheduler.buildArtPrefetchJob(mContext);
+        assertService(job);
+        assertEquals(JobInfo.NETWORK_TYPE_UNMETERED, job.getNetworkType());
+        assertFalse(job.isPeriodic());
+        assertEquals("Error: the prefetch could wait forever for an unmetered network",
+                SunshineJobScheduler.ART_PREFETCH_DEADLINE_MILLIS,
+                job.getMaxExecutionDelayMillis());
+    }
+
+    public void testMaintenanceOnlyWhileChargingOrIdle() {
+        JobInfo[] jobs = SunshineJobScheduler.buildMaintenanceJobs(mContext);
+        assertEquals(2, jobs.length);
+        boolean charging = false;
+        boolean idle = false;
+        for (JobInfo job : jobs) {
+            assertService(job);
+            assertEquals(JobInfo.NETWORK_TYPE_NONE, job.getNetworkType());
+            assertTrue(job.isPeriodic());
+            assertEquals(SunshineJobScheduler.MAINTENANCE_INTERVAL_MILLIS,
+                    job.getIntervalMillis());
+            assertTrue(job.isPersisted());
+            assertTrue("Error: job " + job.getId() + " could run on battery while in use",
+                    job.isRequireCharging() ^ job.isRequireDeviceIdle());
+            charging |= job.isRequireCharging();
+            idle |= job.isRequireDeviceIdle();
+        }
+        assertTrue(charging && idle);
+    }
+
+    public void testJobsScheduledAsBuilt() {
+        SunshineJobScheduler.scheduleJobs(mContext, SunshineSyncAdapter.MAX_SYNC_INTERVAL);
+        JobScheduler jobScheduler =
+                (JobScheduler) mContext.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        int found = 0;
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            switch (job.getId()) {
+                case SunshineJobScheduler.JOB_FORECAST_REFRESH:
+                    assertEquals(JobInfo.NETWORK_TYPE_ANY, job.getNetworkType());
+                    assertEquals(SunshineSyncAdapter.MAX_SYNC_INTERVAL * 1000L,
+                            job.getIntervalMillis());
+                    found++;
+                    break;
+                case SunshineJobScheduler.JOB_MAINTENANCE_CHARGING:
+                    assertTrue(job.isRequireCharging());
+                    found++;
+                    break;
+                case SunshineJobScheduler.JOB_MAINTENANCE_IDLE:
+                    assertTrue(job.isRequireDeviceIdle());
+                    found++;
+                    break;
+            }
+        }
+        assertEquals(3, found);
+
+        SunshineJobScheduler.cancelJobs(mContext);
+        assertFalse(SunshineJobScheduler.isScheduled(mContext,
+                SunshineJobScheduler.JOB_FORECAST_REFRESH));
+    }
+
+    public void testSchedulerSelectableAtRuntime() {
+        String key = mContext.getString(R.string.pref_sync_scheduler_key);
+        try {
+            mPrefs.edit().putString(key,
+                    mContext.getString(R.string.pref_sync_scheduler_job_scheduler)).commit();
+            waitForJobScheduler(true);
+            SunshineJobScheduler.applySelectedScheduler(mContext);
+            assertTrue("Error: the periodic sync didn't move to JobScheduler",
+                    SunshineJobScheduler.isScheduled(mContext,
+                            SunshineJobScheduler.JOB_FORECAST_REFRESH));
+            assertTrue(SunshineJobScheduler.isScheduled(mContext,
+                    SunshineJobScheduler.JOB_MAINTENANCE_IDLE));
+        } finally {
+            mPrefs.edit().remove(key).commit();
+            waitForJobScheduler(false);
+            SunshineJobScheduler.applySelectedScheduler(mContext);
+        }
+        assertFalse("Error: the jobs were left behind on the sync adapter",
+                SunshineJobScheduler.isScheduled(mContext,
+                        SunshineJobScheduler.JOB_FORECAST_REFRESH));
+    }
+
+    public void testMaintenanceOncePerDay() {
+        mLocationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI, createLocationValues()));
+
+        insertOldDay();
+        assertTrue(SunshineJobScheduler.maintainHistory(mContext, mMaintenancePrefs,
+                mLocationId));
+        assertEquals("Error: maintenance left a week-old day behind", 0, countDays());
+
+        // The other maintenance job's turn comes later the same day.
+        insertOldDay();
+        assertFalse("Error: the history was maintained twice in a day",
+                SunshineJobScheduler.maintainHistory(mContext, mMaintenancePrefs, mLocationId));
+        assertEquals(1, countDays());
+    }
+
+    private void assertService(JobInfo job) {
+        assertEquals(SunshineJobService.class.getName(), job.getService().getClassName());
+    }
+
+    private void waitForJobScheduler(final boolean useJobScheduler) {
+        // The settings snapshot catches up with the preference on the main thread.
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return Utility.useJobScheduler(mContext) == useJobScheduler;
+            }
+        }.run();
+    }
+
+    private ContentValues createLocationValues() {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
+        values.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "Fairbanks");
+        values.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        values.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -147.353);
+        return values;
+    }
+
+    private void insertOldDay() {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+        values.put(WeatherContract.WeatherEntry.COLUMN_DATE, WeatherContract.normalizeDate(
+                System.currentTimeMillis() - 7 * DAY_IN_MILLIS));
+        values.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 1.1);
+        values.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        values.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1.3);
+        values.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 75);
+        values.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 65);
+        values.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+        values.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        values.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 321);
+        mContext.getContentResolver().insert(WeatherContract.WeatherEntry.CONTENT_URI, values);
+    }
+
+    private int countDays() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                new String[]{Long.toString(mLocationId)},
+                null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.SyncResult;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.LocationStatusStore;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.FakeHttpServer;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Load test for the multi-location sync: a few hundred locations against a local server
+    with some latency, checking that the worker pool stays bounded, that every location is
+    committed and that one bad location only affects its own status.
+ */
+public class TestMultiLocationSync extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestMultiLocationSync.class.getSimpleName();
+
+    private static final int NUM_LOCATIONS = 300;
+    private static final int NUM_DAYS = 14;
+    private static final long SERVER_LATENCY_MILLIS = 20;
+    private static final String BAD_LOCATION = "nowhere";
+
+    private FakeHttpServer mServer;
+    private String mOriginalBaseUrl;
+    private final AtomicInteger mInFlight = new AtomicInteger();
+    private final AtomicInteger mMaxInFlight = new AtomicInteger();
+    private String[] mLocations;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+
+        mLocations = new String[NUM_LOCATIONS + 1];
+        for (int i = 0; i < NUM_LOCATIONS; i++) {
+            mLocations[i] = String.format(Locale.US, "city-%03d", i);
+        }
+        mLocations[NUM_LOCATIONS] = BAD_LOCATION;
+
+        mServer = new FakeHttpServer(new FakeHttpServer.Handler() {
+            @Override
+            public FakeHttpServer.Response handle(FakeHttpServer.Request request) throws IOException {
+                int inFlight = mInFlight.incrementAndGet();
+                int max;
+                while (inFlight > (max = mMaxInFlight.get())
+                        && !mMaxInFlight.compareAndSet(max, inFlight)) {
+                    // retry
+                }
+                try {
+                    SystemClock.sleep(SERVER_LATENCY_MILLIS);
+                    String location = Uri.parse(request.path).getQueryParameter("q");
+                    String body = BAD_LOCATION.equals(location)
+                            ? "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}"
+                            : TestForecastParser.createForecastJson(location, NUM_DAYS);
+                    return new FakeHttpServer.Response(HttpURLConnection.HTTP_OK,
+                            body.getBytes("UTF-8"));
+                } finally {
+                    mInFlight.decrementAndGet();
+                }
+            }
+        });
+        mServer.start();
+
+        mOriginalBaseUrl = SunshineSyncAdapter.sForecastBaseUrl;
+        SunshineSyncAdapter.sForecastBaseUrl = mServer.getUrl("/data/2.5/forecast/daily?");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SunshineSyncAdapter.sForecastBaseUrl = mOriginalBaseUrl;
+        mServer.shutdown();
+
+        deleteAllRecords();
+        // Don't leave hundreds of statuses behind; only the preferred location's is kept.
+        LocationStatusStore.getInstance(mContext).retainOnly(
+                Collections.singleton(Utility.getPreferredLocation(mContext)));
+        super.tearDown();
+    }
+
+    public void testSyncManyLocations() throws Exception {
+        SunshineSyncAdapter adapter = new SunshineSyncAdapter(mContext, false);
+        Bundle extras = new Bundle();
+        extras.putStringArray(SunshineSyncAdapter.SYNC_EXTRAS_LOCATIONS, mLocations);
+
+        adapter.onPerformSync(null, extras, WeatherContract.CONTENT_AUTHORITY, null,
+                new SyncResult());
+
+        assertEquals(mLocations.length, mServer.getRequestCount());
+        assertTrue("Error: more fetches ran at once than the pool allows",
+                mMaxInFlight.get() <= SunshineSyncAdapter.SYNC_THREAD_COUNT);
+        // Each request waits on the server, so a pool that works has them overlap.
+        assertTrue("Error: locations weren't fetched in parallel", mMaxInFlight.get() > 1);
+
+        assertEquals("Error: every good location should have been stored",
+                NUM_LOCATIONS, count(WeatherContract.LocationEntry.CONTENT_URI));
+        assertEquals("Error: every good location should have its forecast",
+                NUM_LOCATIONS * NUM_DAYS, count(WeatherContract.WeatherEntry.CONTENT_URI));
+
+        for (int i = 0; i < NUM_LOCATIONS; i++) {
+            assertEquals("Error: wrong status for " + mLocations[i],
+                    SunshineSyncAdapter.LOCATION_STATUS_OK,
+                    Utility.getLocationStauts(mContext, mLocations[i]));
+        }
+        assertEquals("Error: the bad location should be the only one marked invalid",
+                SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID,
+                Utility.getLocationStauts(mContext, BAD_LOCATION));
+    }
+
+    public void testSyncAllStoredLocations() throws Exception {
+        SunshineSyncAdapter adapter = new SunshineSyncAdapter(mContext, false);
+        Bundle extras = new Bundle();
+        extras.putStringArray(SunshineSyncAdapter.SYNC_EXTRAS_LOCATIONS, mLocations);
+        adapter.onPerformSync(null, extras, WeatherContract.CONTENT_AUTHORITY, null,
+                new SyncResult());
+        int firstRequests = mServer.getRequestCount();
+
+        // Asking for all locations refreshes what's stored, plus the preferred location.
+        Set<String> expected = new LinkedHashSet<>();
+        expected.add(Utility.getPreferredLocation(mContext));
+        for (int i = 0; i < NUM_LOCATIONS; i++) {
+            expected.add(mLocations[i]);
+        }
+
+        Bundle allExtras = new Bundle();
+        allExtras.putBoolean(SunshineSyncAdapter.SYNC_EXTRAS_ALL_LOCATIONS, true);
+        adapter.onPerformSync(null, allExtras, WeatherContract.CONTENT_AUTHORITY, null,
+                new SyncResult());
+
+        assertEquals(expected.size(), mServer.getRequestCount() - firstRequests);
+        assertEquals(expected.size() * NUM_DAYS,
+                count(WeatherContract.WeatherEntry.CONTENT_URI));
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.SyncLogEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.android.sunshine.app.sync;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.Arrays;
+
+/*
+    Checks that the sync account is set up off the calling thread, looked up once and then
+    kept.
+ */
+public class TestSyncAccount extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSyncAccount.class.getSimpleName();
+
+    public void testAccountCached() {
+        Account account = SunshineSyncAdapter.getSyncAccount(mContext);
+        assertNotNull("Error: no sync account", account);
+        assertSame("Error: the sync account was looked up again",
+                account, SunshineSyncAdapter.getSyncAccount(mContext));
+    }
+
+    public void testInitializeCreatesAccount() {
+        SunshineSyncAdapter.initializeSyncAdapter(mContext);
+        final AccountManager accountManager =
+                (AccountManager) mContext.getSystemService(Context.ACCOUNT_SERVICE);
+        final Account account = new Account(mContext.getString(R.string.app_name),
+                mContext.getString(R.string.sync_account_type));
+        // The account is set up off the calling thread.
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return Arrays.asList(accountManager.getAccountsByType(account.type))
+                        .contains(account);
+            }
+        }.run();
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/*
+    Replays two weeks of hourly forecasts through SyncIntervalPolicy, and compares what the
+    adaptive interval fetched against the fixed interval it replaces: how many syncs it took,
+    and how long today's forecast was out of date on the phone.
+ */
+public class TestSyncIntervalPolicy extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSyncIntervalPolicy.class.getSimpleName();
+
+    private static final int HOUR = 60 * 60;
+    private static final int NUM_DAYS = 14;
+    private static final int NUM_HOURS = 14 * 24;
+    // When the recording's front comes through.
+    private static final int STORM_START = 5 * 24;
+    private static final int STORM_END = STORM_START + 36;
+
+    private final SyncIntervalPolicy mPolicy = new SyncIntervalPolicy(
+            SunshineSyncAdapter.MIN_SYNC_INTERVAL, SunshineSyncAdapter.SYNC_INTERVAL,
+            SunshineSyncAdapter.MAX_SYNC_INTERVAL);
+
+    public void testStableForecastGrowsToCeiling() {
+        SyncIntervalPolicy.State state = mPolicy.getInitialState();
+        for (int i = 0; i < 20; i++) {
+            state = mPolicy.next(state, 0, 0, false);
+        }
+        assertEquals(SunshineSyncAdapter.MAX_SYNC_INTERVAL, state.interval);
+    }
+
+    public void testOneUnchangedSyncKeepsInterval() {
+        SyncIntervalPolicy.State state = mPolicy.next(mPolicy.getInitialState(), 0, NUM_DAYS,
+                false);
+        assertEquals(SunshineSyncAdapter.SYNC_INTERVAL, state.interval);
+    }
+
+    public void testTodayChangedShrinksToFloor() {
+        SyncIntervalPolicy.State state = mPolicy.getInitialState();
+        for (int i = 0; i < 20; i++) {
+            state = mPolicy.next(state, 1, NUM_DAYS, true);
+        }
+        assertEquals(SunshineSyncAdapter.MIN_SYNC_INTERVAL, state.interval);
+    }
+
+    public void testVolatileForecastShrinks() {
+        SyncIntervalPolicy.State state = mPolicy.next(mPolicy.getInitialState(),
+                NUM_DAYS / 2, NUM_DAYS, false);
+        assertTrue(state.interval < SunshineSyncAdapter.SYNC_INTERVAL);
+    }
+
+    public void testLaterDaysReturnToBase() {
+        SyncIntervalPolicy.State state = new SyncIntervalPolicy.State(
+                SunshineSyncAdapter.MAX_SYNC_INTERVAL, 5);
+        for (int i = 0; i < 10; i++) {
+            state = mPolicy.next(state, 1, NUM_DAYS, false);
+        }
+        assertEquals(SunshineSyncAdapter.SYNC_INTERVAL, state.interval);
+        assertEquals(0, state.stableSyncs);
+    }
+
+    public void testBadBoundsRejected() {
+        try {
+            new SyncIntervalPolicy(HOUR * 4, HOUR * 3, HOUR * 12);
+            fail("Error: a floor above the base was accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    /*
+        The recording: what the server would have sent each hour.  Calm days, then a front
+        that shows up in the days ahead and is revised every six hours as it approaches, then
+        comes through with today's forecast revised every four hours, then calm again.  A new
+        day is added at the end of the forecast every 24 hours.
+     */
+    private static int[][] recordPayloads() {
+        Random random = new Random(7);
+        int[][] payloads = new int[NUM_HOURS][];
+        int[] forecast = new int[NUM_DAYS];
+        for (int day = 0; day < NUM_DAYS; day++) {
+            forecast[day] = 800 + random.nextInt(4);
+        }
+        for (int hour = 0; hour < NUM_HOURS; hour++) {
+            if (hour > 0 && hour % 24 == 0) {
+                System.arraycopy(forecast, 1, forecast, 0, NUM_DAYS - 1);
+                forecast[NUM_DAYS - 1] = 800 + random.nextInt(4);
+            }
+            if (hour >= STORM_START - 18 && hour < STORM_START && hour % 6 == 1) {
+                for (int day = 1; day < 8; day++) {
+                    forecast[day] = 500 + random.nextInt(20);
+                }
+            }
+            if (hour >= STORM_START && hour < STORM_END && hour % 4 == 1) {
+                forecast[0] = 200 + random.nextInt(30);
+                forecast[1] = 500 + random.nextInt(20);
+            }
+            payloads[hour] = forecast.clone();
+        }
+        return payloads;
+    }
+
+    public void testReplay() {
+        int[][] payloads = recordPayloads();
+        int[] fixed = replay(payloads, false);
+        int[] adaptive = replay(payloads, true);
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "Over %d hours: %d syncs at a fixed %d h, %d adaptive, %d saved; %d and %d " +
+                        "during the storm; today's forecast out of date for %d and %d hours",
+                NUM_HOURS, fixed[0], SunshineSyncAdapter.SYNC_INTERVAL / HOUR, adaptive[0],
+                fixed[0] - adaptive[0], fixed[2], adaptive[2], fixed[1], adaptive[1]));
+        assertTrue("Error: the adaptive interval didn't save any syncs", adaptive[0] < fixed[0]);
+        assertTrue("Error: the adaptive interval didn't speed up for the storm",
+                adaptive[2] > fixed[2]);
+        assertTrue("Error: the adaptive interval let today's forecast go staler",
+                adaptive[1] <= fixed[1]);
+    }
+
+    /*
+        Syncs through the recording, and returns how many syncs there were, for how many hours
+        today's forecast on the phone differed from the server's, and how many syncs there
+        were during the storm.
+     */
+    private int[] replay(int[][] payloads, boolean adaptive) {
+        SyncIntervalPolicy.State state = mPolicy.getInitialState();
+        int[] stored = null;
+        int syncs = 0;
+        int staleHours = 0;
+        int stormSyncs = 0;
+        int nextSync = 0;
+        for (int hour = 0; hour < payloads.length; hour++) {
+            // The phone shifts its copy along with the days, like the provider's date query.
+            if (stored != null && hour % 24 == 0) {
+                stored = Arrays.copyOfRange(stored, 1, NUM_DAYS + 1);
+            }
+            if (hour == nextSync) {
+                syncs++;
+                if (hour >= STORM_START && hour < STORM_END) {
+                    stormSyncs++;
+                }
+                int[] payload = payloads[hour];
+                int daysChanged = 0;
+                boolean todayChanged = false;
+                for (int day = 0; day < NUM_DAYS; day++) {
+                    if (stored == null || stored[day] != payload[day]) {
+                        daysChanged++;
+                        todayChanged |= day == 0;
+                    }
+                }
+                stored = payload;
+                if (adaptive) {
+                    state = mPolicy.next(state, daysChanged, NUM_DAYS, todayChanged);
+                }
+                int interval = adaptive ? state.interval : SunshineSyncAdapter.SYNC_INTERVAL;
+                assertTrue(interval >= SunshineSyncAdapter.MIN_SYNC_INTERVAL
+                        && interval <= SunshineSyncAdapter.MAX_SYNC_INTERVAL);
+                nextSync = hour + Math.max(1, interval / HOUR);
+            }
+            if (stored[0] != payloads[hour][0]) {
+                staleHours++;
+            }
+        }
+        return new int[]{syncs, staleHours, stormSyncs};
+    }
+}
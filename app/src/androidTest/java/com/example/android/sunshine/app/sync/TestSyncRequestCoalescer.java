@@ -0,0 +1,146 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.FakeHttpServer;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Checks that bursts of sync requests come out as one sync for the last location asked for,
+    and that a fetch of a location nobody wants any more is cancelled.
+ */
+public class TestSyncRequestCoalescer extends AndroidTestCase {
+
+    private static final long WINDOW_MILLIS = 200;
+
+    private HandlerThread mThread;
+    private final List<String> mSynced = new ArrayList<>();
+    private SyncRequestCoalescer mCoalescer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mThread = new HandlerThread("coalescer");
+        mThread.start();
+        mCoalescer = new SyncRequestCoalescer(new Handler(mThread.getLooper()), WINDOW_MILLIS) {
+            @Override
+            void requestSync(Context context, String location) {
+                synchronized (mSynced) {
+                    mSynced.add(location);
+                }
+            }
+        };
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mThread.quit();
+        super.tearDown();
+    }
+
+    public void testBurstForOneLocation() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            mCoalescer.request(mContext, "94043");
+        }
+        waitForSyncs(1);
+
+        assertEquals(5, mCoalescer.getRequestsReceived());
+        assertEquals(1, mCoalescer.getSyncsExecuted());
+    }
+
+    public void testOnlyLastLocationSynced() throws Exception {
+        mCoalescer.request(mContext, "9404");
+        mCoalescer.request(mContext, "94043");
+        mCoalescer.request(mContext, "94040");
+        waitForSyncs(1);
+
+        // Give a second sync the time to show up, if there was going to be one.
+        Thread.sleep(WINDOW_MILLIS * 3);
+        synchronized (mSynced) {
+            assertEquals(1, mSynced.size());
+            assertEquals("94040", mSynced.get(0));
+        }
+    }
+
+    public void testRepeatAfterSyncIgnored() throws Exception {
+        mCoalescer.request(mContext, "94043");
+        waitForSyncs(1);
+        mCoalescer.request(mContext, "94043");
+
+        Thread.sleep(WINDOW_MILLIS * 2);
+        assertEquals(2, mCoalescer.getRequestsReceived());
+        assertEquals(1, mCoalescer.getSyncsExecuted());
+    }
+
+    public void testSupersededFetchCancelled() throws Exception {
+        final CountDownLatch arrived = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        FakeHttpServer server = new FakeHttpServer(new FakeHttpServer.Handler() {
+            @Override
+            public FakeHttpServer.Response handle(FakeHttpServer.Request request)
+                    throws IOException {
+                arrived.countDown();
+                try {
+                    // A slow server, so the fetch is still going when the location changes.
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new FakeHttpServer.Response(HttpURLConnection.HTTP_OK, new byte[0]);
+            }
+        });
+        server.start();
+        try {
+            mCoalescer.request(mContext, "94043");
+            final HttpURLConnection connection =
+                    (HttpURLConnection) new URL(server.getUrl("/forecast")).openConnection();
+            mCoalescer.onFetchStarted("94043", connection);
+            final IOException[] failure = new IOException[1];
+            Thread fetch = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        connection.getResponseCode();
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            fetch.start();
+            assertTrue(arrived.await(5, TimeUnit.SECONDS));
+
+            mCoalescer.request(mContext, "94040");
+            fetch.join(5000);
+            mCoalescer.onFetchFinished(connection);
+
+            assertNotNull("Error: the superseded fetch wasn't cancelled", failure[0]);
+            assertTrue(mCoalescer.isCancelled(connection));
+            assertEquals(1, mCoalescer.getFetchesCancelled());
+        } finally {
+            release.countDown();
+            server.shutdown();
+        }
+    }
+
+    private void waitForSyncs(final int count) {
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                synchronized (mSynced) {
+                    return mSynced.size() >= count;
+                }
+            }
+        }.run();
+    }
+}
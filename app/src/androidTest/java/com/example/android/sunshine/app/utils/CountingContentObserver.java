@@ -0,0 +1,61 @@
+package com.example.android.sunshine.app.utils;
+
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A ContentObserver that counts its onChange callbacks, for tests that care about how many
+ * notifications a write produces rather than whether there was one at all.
+ */
+public class CountingContentObserver extends ContentObserver {
+    private final HandlerThread mHT;
+    private final AtomicInteger mChangeCount = new AtomicInteger();
+
+    public static CountingContentObserver create() {
+        HandlerThread ht = new HandlerThread("CountingObserverThread");
+        ht.start();
+        return new CountingContentObserver(ht);
+    }
+
+    private CountingContentObserver(HandlerThread ht) {
+        super(new Handler(ht.getLooper()));
+        mHT = ht;
+    }
+
+    // On earlier versions of Android, this onChange method is called
+    @Override
+    public void onChange(boolean selfChange) {
+        onChange(selfChange, null);
+    }
+
+    @Override
+    public void onChange(boolean selfChange, Uri uri) {
+        mChangeCount.incrementAndGet();
+    }
+
+    public int getChangeCount() {
+        return mChangeCount.get();
+    }
+
+    /**
+     * Notifications are delivered asynchronously, so give any that are in flight a chance to
+     * arrive before reading the count.
+     */
+    public int settleAndGetChangeCount(long quietMillis) {
+        int count;
+        do {
+            count = mChangeCount.get();
+            SystemClock.sleep(quietMillis);
+        } while (count != mChangeCount.get());
+        return count;
+    }
+
+    public void quit() {
+        mHT.quit();
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.android.sunshine.app.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A tiny HTTP/1.1 server on the loopback interface that stands in for OpenWeatherMap in tests.
+ * Every connection serves exactly one request and is then closed.  The server keeps count of
+ * the requests it answered and of the body bytes it sent.
+ */
+public class FakeHttpServer {
+
+    public static class Request {
+        public final String method;
+        public final String path;
+        private final Map<String, String> mHeaders;
+
+        Request(String method, String path, Map<String, String> headers) {
+            this.method = method;
+            this.path = path;
+            mHeaders = headers;
+        }
+
+        public String getHeader(String name) {
+            return mHeaders.get(name.toLowerCase(Locale.US));
+        }
+    }
+
+    public static class Response {
+        final int mCode;
+        final Map<String, String> mHeaders = new LinkedHashMap<>();
+        final byte[] mBody;
+
+        public Response(int code, byte[] body) {
+            mCode = code;
+            mBody = body == null ? new byte[0] : body;
+        }
+
+        public Response header(String name, String value) {
+            mHeaders.put(name, value);
+            return this;
+        }
+    }
+
+    public interface Handler {
+        Response handle(Request request) throws IOException;
+    }
+
+    private final Handler mHandler;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicLong mBodyBytesSent = new AtomicLong();
+    private ServerSocket mServerSocket;
+
+    public FakeHttpServer(Handler handler) {
+        mHandler = handler;
+    }
+
+    public void start() throws IOException {
+        mServerSocket = new ServerSocket(0, 256, InetAddress.getByName("127.0.0.1"));
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (!mServerSocket.isClosed()) {
+                    try {
+                        final Socket socket = mServerSocket.accept();
+                        mExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        });
+                    } catch (SocketException e) {
+                        // shutdown() closed the socket
+                        return;
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    public void shutdown() throws IOException, InterruptedException {
+        mServerSocket.close();
+        mExecutor.shutdownNow();
+        mExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return an absolute URL on this server for the given path, e.g "/forecast?".
+     */
+    public String getUrl(String path) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+    }
+
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public long getBodyBytesSent() {
+        return mBodyBytesSent.get();
+    }
+
+    private void serve(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+            String requestLine = reader.readLine();
+            if (requestLine == null) {
+                return;
+            }
+            String[] parts = requestLine.split(" ");
+            Map<String, String> headers = new HashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null && line.length() > 0) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                            line.substring(colon + 1).trim());
+                }
+            }
+
+            Response response = mHandler.handle(new Request(parts[0], parts[1], headers));
+            mRequestCount.incrementAndGet();
+
+            StringBuilder head = new StringBuilder();
+            head.append("HTTP/1.1 ").append(response.mCode).append(" Fake\r\n");
+            for (Map.Entry<String, String> header : response.mHeaders.entrySet()) {
+                head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+            head.append("Content-Length: ").append(response.mBody.length).append("\r\n");
+            head.append("Connection: close\r\n\r\n");
+
+            OutputStream out = socket.getOutputStream();
+            out.write(head.toString().getBytes("ISO-8859-1"));
+            out.write(response.mBody);
+            out.flush();
+            mBodyBytesSent.addAndGet(response.mBody.length);
+        } catch (IOException e) {
+            // The client went away; nothing to do.
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
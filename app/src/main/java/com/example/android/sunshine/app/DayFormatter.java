@@ -0,0 +1,201 @@
+package com.example.android.sunshine.app;
+
+import android.annotation.SuppressLint;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.text.format.Time;
+import android.util.SparseArray;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats the day strings of the forecast list, the widgets and the detail view.  It keeps its
+ * date formats and the current Julian day, and remembers the strings for each day until the
+ * day, the time zone or the locale changes.  It learns of the last two from the system's
+ * broadcasts rather than looking up the defaults on every call.
+ *
+ * The list formats on its loader thread and the widgets on their own threads, so every method
+ * is synchronized.
+ */
+public class DayFormatter {
+
+    // Plenty for the forecast and the days around it; cleared if it ever grows past this.
+    private static final int MAX_CACHED_DAYS = 64;
+
+    private static DayFormatter sInstance;
+
+    private final Context mContext;
+
+    // What the formats and strings below were made for.
+    private Locale mLocale;
+    private TimeZone mTimeZone;
+    private int mCurrentJulianDay;
+    private long mGmtOffset;
+    // Set when the system says the time zone or the locale changed, so the defaults aren't
+    // looked up (and the time zone cloned) on every call.
+    private boolean mDefaultsChanged = true;
+
+    private SimpleDateFormat mShortenedDateFormat;
+    private SimpleDateFormat mDayFormat;
+    private SimpleDateFormat mMonthDayFormat;
+    private String mToday;
+    private String mTomorrow;
+
+    // Formatted strings, by Julian day.
+    private final SparseArray<String> mFriendlyDays = new SparseArray<>();
+    private final SparseArray<String> mDayNames = new SparseArray<>();
+    private final SparseArray<String> mMonthDays = new SparseArray<>();
+
+    public static synchronized DayFormatter getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            final DayFormatter formatter = new DayFormatter(appContext);
+            // Like WeatherContract.normalizeDate(), it keeps the time zone for the life of
+            // the process, so it has to hear when that changes, and the locale too.
+            IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            appContext.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    formatter.onDefaultsChanged();
+                }
+            }, filter);
+            sInstance = formatter;
+        }
+        return sInstance;
+    }
+
+    DayFormatter(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Makes the formatter use the current default time zone and locale, after either changes.
+     */
+    synchronized void onDefaultsChanged() {
+        mDefaultsChanged = true;
+    }
+
+    /**
+     * @return the time the strings are relative to.
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @see Utility#getFriendlyDayString
+     */
+    @SuppressLint("StringFormatMatches")
+    public synchronized String getFriendlyDayString(long dateInMillis) {
+        int julianDay = getJulianDay(dateInMillis);
+        String friendlyDay = mFriendlyDays.get(julianDay);
+        if (friendlyDay == null) {
+            if (julianDay == mCurrentJulianDay) {
+                // "Today, June 24"
+                friendlyDay = mContext.getString(R.string.format_full_friendly_date, mToday,
+                        getFormattedMonthDay(dateInMillis));
+            } else if (julianDay < mCurrentJulianDay + 7) {
+                // Less than a week in the future, just the day name.
+                friendlyDay = getDayName(dateInMillis);
+            } else {
+                // Otherwise "Mon Jun 3".
+                friendlyDay = mShortenedDateFormat.format(dateInMillis);
+            }
+            put(mFriendlyDays, julianDay, friendlyDay);
+        }
+        return friendlyDay;
+    }
+
+    /**
+     * @see Utility#getDayName
+     */
+    public synchronized String getDayName(long dateInMillis) {
+        int julianDay = getJulianDay(dateInMillis);
+        String dayName = mDayNames.get(julianDay);
+        if (dayName == null) {
+            if (julianDay == mCurrentJulianDay) {
+                dayName = mToday;
+            } else if (julianDay == mCurrentJulianDay + 1) {
+                dayName = mTomorrow;
+            } else {
+                // The day of the week, e.g "Wednesday".
+                dayName = mDayFormat.format(dateInMillis);
+            }
+            put(mDayNames, julianDay, dayName);
+        }
+        return dayName;
+    }
+
+    /**
+     * @see Utility#getFormattedMonthDay
+     */
+    public synchronized String getFormattedMonthDay(long dateInMillis) {
+        int julianDay = getJulianDay(dateInMillis);
+        String monthDay = mMonthDays.get(julianDay);
+        if (monthDay == null) {
+            monthDay = mMonthDayFormat.format(dateInMillis);
+            put(mMonthDays, julianDay, monthDay);
+        }
+        return monthDay;
+    }
+
+    /*
+        Brings the formats and the current day up to date, and returns the Julian day of the
+        date.
+     */
+    private int getJulianDay(long dateInMillis) {
+        long now = currentTimeMillis();
+        if (mDefaultsChanged) {
+            mDefaultsChanged = false;
+            Locale locale = Locale.getDefault();
+            TimeZone timeZone = TimeZone.getDefault();
+            if (!locale.equals(mLocale) || !timeZone.getID().equals(getTimeZoneId())) {
+                mLocale = locale;
+                mTimeZone = timeZone;
+                mShortenedDateFormat = createDateFormat("EEE MMM dd");
+                mDayFormat = createDateFormat("EEEE");
+                mMonthDayFormat = createDateFormat("MMMM dd");
+                mToday = mContext.getString(R.string.today);
+                mTomorrow = mContext.getString(R.string.tomorrow);
+                clear();
+            }
+        }
+
+        long gmtOffset = mTimeZone.getOffset(now) / 1000;
+        int currentJulianDay = Time.getJulianDay(now, gmtOffset);
+        if (currentJulianDay != mCurrentJulianDay || gmtOffset != mGmtOffset) {
+            mCurrentJulianDay = currentJulianDay;
+            mGmtOffset = gmtOffset;
+            clear();
+        }
+        return Time.getJulianDay(dateInMillis, gmtOffset);
+    }
+
+    private String getTimeZoneId() {
+        return mTimeZone == null ? null : mTimeZone.getID();
+    }
+
+    private SimpleDateFormat createDateFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, mLocale);
+        format.setTimeZone(mTimeZone);
+        return format;
+    }
+
+    private static void put(SparseArray<String> strings, int julianDay, String string) {
+        if (strings.size() >= MAX_CACHED_DAYS) {
+            strings.clear();
+        }
+        strings.put(julianDay, string);
+    }
+
+    private void clear() {
+        mFriendlyDays.clear();
+        mDayNames.clear();
+        mMonthDays.clear();
+    }
+}
@@ -4,6 +4,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -12,12 +13,18 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
 
-import static com.example.android.sunshine.app.ForecastFragment.COL_WEATHER_DATE;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link Cursor} to a {@link android.widget.ListView}.
+ * <p>
+ * The rows are the ones {@link ForecastLoader} formatted in the background, so binding only
+ * copies them into the views.  A new cursor is applied as the row changes the loader worked
+ * out, so a sync that changes one day only rebinds that day.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -25,8 +32,52 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
 
+    // The change payload for a row whose images stayed the same, so only its text is rebound
+    // and the icon isn't loaded again.
+    static final Object PAYLOAD_TEXT = new Object();
+
+    /**
+     * Matches rows by date.
+     */
+    static class ForecastDiffCallback extends DiffUtil.Callback {
+        private final List<ForecastRow> mOldRows;
+        private final List<ForecastRow> mNewRows;
+
+        ForecastDiffCallback(List<ForecastRow> oldRows, List<ForecastRow> newRows) {
+            mOldRows = oldRows;
+            mNewRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldRows.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewRows.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldRows.get(oldItemPosition).date == mNewRows.get(newItemPosition).date;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldRows.get(oldItemPosition).equals(mNewRows.get(newItemPosition));
+        }
+
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            return mOldRows.get(oldItemPosition).hasSameImagesAs(mNewRows.get(newItemPosition))
+                    ? PAYLOAD_TEXT : null;
+        }
+    }
+
     private Context mContext;
     private Cursor mCursor;
+    private List<ForecastRow> mRows = Collections.emptyList();
     private TextView mEmptyView;
     final private ItemChoiceManager mICM;
     private ForecastAdapterOnClickHandler mListener;
@@ -40,9 +91,11 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
                            TextView emptyView,
                            int choiceMode) {
         mContext = context;
-        mCursor = cursor;
+        setCursor(cursor);
         mEmptyView = emptyView;
         mListener = clickHandler;
+        // Before the choice manager starts observing, which rules out changing this.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -58,11 +111,44 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     }
 
     public void swapCursor(Cursor cursor) {
-        mCursor = cursor;
+        List<ForecastRow> oldRows = mRows;
+        setCursor(cursor);
+        ForecastLoader.ForecastCursor forecastCursor = cursor instanceof ForecastLoader.ForecastCursor
+                ? (ForecastLoader.ForecastCursor) cursor : null;
+        if (forecastCursor != null && forecastCursor.getDiff() != null
+                && forecastCursor.getPreviousRows() == oldRows) {
+            forecastCursor.getDiff().dispatchUpdatesTo(this);
+            // A new first day takes over the "today" layout, which the diff can't know.
+            if (mIsUseTodayLayout && !oldRows.isEmpty() && !mRows.isEmpty()
+                    && oldRows.get(0).date != mRows.get(0).date) {
+                notifyItemChanged(0);
+            }
+        } else {
+            notifyDataSetChanged();
+        }
+        mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * Shows rows that have no cursor behind them, such as a {@link ForecastSnapshot}'s, until
+     * the loader delivers one.
+     */
+    public void showRows(List<ForecastRow> rows) {
+        mCursor = null;
+        mRows = rows;
         notifyDataSetChanged();
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
+    private void setCursor(Cursor cursor) {
+        mCursor = cursor;
+        if (cursor instanceof ForecastLoader.ForecastCursor) {
+            mRows = ((ForecastLoader.ForecastCursor) cursor).getRows();
+        } else {
+            mRows = Collections.emptyList();
+        }
+    }
+
     @Override
     public ForecastAdapter.ForecastAdapterViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         // Choose the layout type
@@ -85,58 +171,75 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
+        ForecastRow row = mRows.get(position);
 
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_ID);
         int defaultImage;
-        switch (getItemViewType(mCursor.getPosition())) {
+        switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
+                defaultImage = row.artResource;
                 break;
 
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
+                defaultImage = row.iconResource;
         }
 
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-        if (Utility.usingLocalGraphics(mContext)) {
+        // Named after the day rather than the position: a text-only bind doesn't come through
+        // here, and the day a position shows moves when the first day is purged.
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + row.date);
+        if (row.artUrl == null) {
             forecastAdapterViewHolder.mIconView.
                     setImageResource(defaultImage);
         } else {
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                    .load(row.artUrl)
+                    // Also look for the art the art prefetch job downloaded.
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
 
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(COL_WEATHER_DATE);
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis));
+        bindText(forecastAdapterViewHolder, row);
 
-        // Read weather forecast from cursor
-        String description = mCursor.getString(ForecastFragment.COL_WEATHER_DESC);
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+    }
 
-        // Read user preference for metric or imperial temperature units
-        boolean isMetric = Utility.isMetric(mContext);
+    @Override
+    public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position,
+                                 List<Object> payloads) {
+        if (!isTextOnly(payloads)) {
+            onBindViewHolder(forecastAdapterViewHolder, position);
+            return;
+        }
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high, isMetric);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        ForecastRow row = mRows.get(position);
+        bindText(forecastAdapterViewHolder, row);
+        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+    }
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low, isMetric);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+    private static boolean isTextOnly(List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            return false;
+        }
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_TEXT) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+    private void bindText(ForecastAdapterViewHolder forecastAdapterViewHolder, ForecastRow row) {
+        forecastAdapterViewHolder.mDateView.setText(row.friendlyDate);
+
+        forecastAdapterViewHolder.mDescriptionView.setText(row.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.descriptionContentDescription);
+
+        forecastAdapterViewHolder.mHighTempView.setText(row.high);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.highContentDescription);
+
+        forecastAdapterViewHolder.mLowTempView.setText(row.low);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.lowContentDescription);
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -164,10 +267,15 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mIsUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    // Each day appears once, so its date identifies it across loads.
+    @Override
+    public long getItemId(int position) {
+        return mRows.get(position).date;
+    }
+
     @Override
     public int getItemCount() {
-        if (mCursor == null) return 0;
-        return mCursor.getCount();
+        return mRows.size();
     }
 
     /**
@@ -192,8 +300,12 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
         @Override
         public void onClick(View v) {
-            mCursor.moveToPosition(getAdapterPosition());
-            mListener.onClick(mCursor.getLong(COL_WEATHER_DATE), this);
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                // The row was removed by an update that hasn't been laid out yet.
+                return;
+            }
+            mListener.onClick(mRows.get(position).date, this);
             mICM.onClick(this);
         }
     }
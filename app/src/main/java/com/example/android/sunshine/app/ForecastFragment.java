@@ -24,11 +24,9 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
@@ -50,6 +48,8 @@ import android.widget.TextView;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
+import java.util.List;
+
 import static com.example.android.sunshine.app.Utility.getPreferredLocation;
 
 /**
@@ -60,7 +60,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private static final int FORECAST_LOADER = 0;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
-    private static final String[] FORECAST_COLUMNS = {
+    static final String[] FORECAST_COLUMNS = {
             // In this case the id needs to be fully qualified with a table name, since
             // the content provider joins the location & weather tables in the background
             // (both have an _id column)
@@ -102,6 +102,12 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private boolean mIsFirstLoad = true;
     private int mChoiceMode;
     private boolean mHoldForTransition;
+    // The display settings the list was last bound with.
+    private int mDisplaySettingsGeneration = Utility.getDisplaySettingsGeneration();
+    private boolean mRedrawingForDisplaySettings;
+    // The saved forecast shown until the loader finishes, if there was one.
+    private List<ForecastRow> mSnapshotRows;
+    private boolean mFirstFrameLogged;
 
     public ForecastFragment() {
     }
@@ -251,6 +257,9 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if (mHoldForTransition) {
             getActivity().supportPostponeEnterTransition();
         }
+        if (savedInstanceState == null && mForecastAdapter.getItemCount() == 0) {
+            showSnapshot();
+        }
         getLoaderManager().initLoader(FORECAST_LOADER, null, this);
         setRetainInstance(true);
         super.onActivityCreated(savedInstanceState);
@@ -258,15 +267,23 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public void onResume() {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
-        sp.registerOnSharedPreferenceChangeListener(this);
+        LocationStatusStore.getInstance(getActivity()).registerListener(this);
         super.onResume();
+        if (mDisplaySettingsGeneration != Utility.getDisplaySettingsGeneration()) {
+            mDisplaySettingsGeneration = Utility.getDisplaySettingsGeneration();
+            // The rows were formatted with the old settings, so have the loader format them
+            // again.  The data didn't change, so the provider answers from its cache.
+            Loader<Cursor> loader = getLoaderManager().getLoader(FORECAST_LOADER);
+            if (loader != null && mForecastAdapter.getItemCount() > 0) {
+                mRedrawingForDisplaySettings = true;
+                loader.onContentChanged();
+            }
+        }
     }
 
     @Override
     public void onPause() {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
-        sp.unregisterOnSharedPreferenceChangeListener(this);
+        LocationStatusStore.getInstance(getActivity()).unregisterListener(this);
         super.onPause();
     }
 
@@ -327,18 +344,29 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 locationSetting, System.currentTimeMillis());
 
-        return new CursorLoader(getActivity(),
+        ForecastLoader loader = new ForecastLoader(getActivity(),
                 weatherForLocationUri,
                 FORECAST_COLUMNS,
-                null,
-                null,
                 sortOrder);
+        if (mSnapshotRows != null) {
+            // Only what changed since the snapshot is redrawn.
+            loader.setShownRows(mSnapshotRows);
+            mSnapshotRows = null;
+        }
+        return loader;
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> cursorLoader, Cursor data) {
         mForecastAdapter.swapCursor(data)
         ;
+        logFirstFrame(data.getCount() + " rows from the loader");
+        mDisplaySettingsGeneration = Utility.getDisplaySettingsGeneration();
+        if (mRedrawingForDisplaySettings) {
+            mRedrawingForDisplaySettings = false;
+            Utility.logFirstFrameAfterDisplaySettingsChanged(mRecyclerView, LOG_TAG,
+                    data.getCount() + " forecast rows");
+        }
         if (mPosition != RecyclerView.NO_POSITION) {
             // If we don't need to restart the loader, and there's a desired position to restore
             // to, do so now.
@@ -375,6 +403,50 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     }
 
+    /*
+        Shows the forecast saved after the last sync while the loader queries the database.
+     */
+    private void showSnapshot() {
+        mSnapshotRows = ForecastSnapshot.take(getActivity(), getPreferredLocation(getActivity()));
+        if (mSnapshotRows == null) {
+            return;
+        }
+        mForecastAdapter.showRows(mSnapshotRows);
+        logFirstFrame(mSnapshotRows.size() + " rows from the snapshot");
+        if (mHoldForTransition) {
+            mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    if (mRecyclerView.getChildCount() > 0) {
+                        mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        getActivity().supportStartPostponedEnterTransition();
+                    }
+                    return true;
+                }
+            });
+        }
+    }
+
+    /*
+        In debug builds, logs how long after the process started the list first drew, and where
+        the forecast it showed came from.
+     */
+    private void logFirstFrame(final String source) {
+        if (!BuildConfig.DEBUG || mFirstFrameLogged) {
+            return;
+        }
+        mFirstFrameLogged = true;
+        mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.d(LOG_TAG, "First forecast frame " + SunshineApplication.getMillisSinceStart()
+                        + " ms after start, showing " + source);
+                return true;
+            }
+        });
+    }
+
     public void updateEmptyView() {
         if (mForecastAdapter.getItemCount() == 0) {
             TextView textView = (TextView) getView().findViewById(R.id.recyclerview_forecast_empty);
@@ -408,7 +480,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
-        if (key.equals(getString(R.string.pref_location_status))) {
+        // The key is the location whose sync status changed.
+        if (key.equals(Utility.getPreferredLocation(getActivity()))) {
             updateEmptyView();
         }
     }
@@ -0,0 +1,132 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+import android.support.v7.util.DiffUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link CursorLoader} for the forecast list that also formats every row on its background
+ * thread.  It delivers a {@link ForecastCursor}, which carries the formatted rows along with the
+ * cursor they came from, and the difference from the rows it delivered before.
+ */
+public class ForecastLoader extends CursorLoader {
+
+    /**
+     * The loaded cursor, with its rows formatted for display.
+     */
+    public static class ForecastCursor extends CursorWrapper {
+        private final List<ForecastRow> mRows;
+        private final List<ForecastRow> mPreviousRows;
+        private final DiffUtil.DiffResult mDiff;
+
+        ForecastCursor(Cursor cursor, List<ForecastRow> rows) {
+            this(cursor, rows, null, null);
+        }
+
+        ForecastCursor(Cursor cursor, List<ForecastRow> rows, List<ForecastRow> previousRows,
+                       DiffUtil.DiffResult diff) {
+            super(cursor);
+            mRows = rows;
+            mPreviousRows = previousRows;
+            mDiff = diff;
+        }
+
+        public List<ForecastRow> getRows() {
+            return mRows;
+        }
+
+        /**
+         * @return the rows {@link #getDiff} goes from, or null if there's no diff.
+         */
+        public List<ForecastRow> getPreviousRows() {
+            return mPreviousRows;
+        }
+
+        /**
+         * @return the changes from {@link #getPreviousRows} to {@link #getRows}, or null.
+         */
+        public DiffUtil.DiffResult getDiff() {
+            return mDiff;
+        }
+    }
+
+    // The rows last delivered, for the next load to diff against.  Written on the main thread.
+    private volatile List<ForecastRow> mDeliveredRows;
+
+    public ForecastLoader(Context context, Uri uri, String[] projection, String sortOrder) {
+        super(context, uri, projection, null, null, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            List<ForecastRow> rows = formatRows(getContext(), cursor);
+
+            List<ForecastRow> previousRows = mDeliveredRows;
+            DiffUtil.DiffResult diff = null;
+            if (previousRows != null) {
+                // The rows are sorted by date, so nothing ever moves.
+                diff = DiffUtil.calculateDiff(
+                        new ForecastAdapter.ForecastDiffCallback(previousRows, rows), false);
+            }
+            return new ForecastCursor(cursor, rows, previousRows, diff);
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Has the next load diff against rows already on screen, such as a
+     * {@link ForecastSnapshot}'s, rather than replace them wholesale.
+     */
+    public void setShownRows(List<ForecastRow> rows) {
+        mDeliveredRows = rows;
+    }
+
+    /**
+     * Formats every row of a forecast cursor for the list, leaving the cursor before its first
+     * row.
+     */
+    static List<ForecastRow> formatRows(Context context, Cursor cursor) {
+        // Read the preferences once for the whole list, rather than once per bind.
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        boolean isMetric = settings.isMetric;
+        int artPack = settings.usingLocalGraphics
+                ? WeatherConditions.ART_PACK_NONE : settings.artPack;
+
+        List<ForecastRow> rows = new ArrayList<>(cursor.getCount());
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            rows.add(ForecastRow.fromCursor(context, cursor, isMetric, artPack));
+        }
+        cursor.moveToPosition(-1);
+        return Collections.unmodifiableList(rows);
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (!isReset()) {
+            mDeliveredRows = cursor instanceof ForecastCursor
+                    ? ((ForecastCursor) cursor).getRows() : null;
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mDeliveredRows = null;
+    }
+}
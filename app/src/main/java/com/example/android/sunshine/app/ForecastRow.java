@@ -0,0 +1,115 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+
+/**
+ * One day of the forecast list, already formatted for display.  {@link ForecastLoader} builds
+ * these on its background thread, so binding a list item only copies fields into views.
+ */
+public final class ForecastRow {
+    public final long date;
+    public final int weatherId;
+    // The small icon used by most items, and the art used by the "today" item.
+    public final int iconResource;
+    public final int artResource;
+    // Null when the local graphics are in use.
+    public final String artUrl;
+    public final String friendlyDate;
+    public final String description;
+    public final String descriptionContentDescription;
+    public final String high;
+    public final String highContentDescription;
+    public final String low;
+    public final String lowContentDescription;
+
+    ForecastRow(long date, int weatherId, int iconResource, int artResource,
+                String artUrl, String friendlyDate, String description,
+                String descriptionContentDescription, String high,
+                String highContentDescription, String low,
+                String lowContentDescription) {
+        this.date = date;
+        this.weatherId = weatherId;
+        this.iconResource = iconResource;
+        this.artResource = artResource;
+        this.artUrl = artUrl;
+        this.friendlyDate = friendlyDate;
+        this.description = description;
+        this.descriptionContentDescription = descriptionContentDescription;
+        this.high = high;
+        this.highContentDescription = highContentDescription;
+        this.low = low;
+        this.lowContentDescription = lowContentDescription;
+    }
+
+    /**
+     * @return true if the row shows the same icon and art as other, so rebinding it from other
+     * only needs to change its text.
+     */
+    boolean hasSameImagesAs(ForecastRow other) {
+        return iconResource == other.iconResource
+                && artResource == other.artResource
+                && (artUrl == null ? other.artUrl == null : artUrl.equals(other.artUrl));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ForecastRow)) {
+            return false;
+        }
+        ForecastRow other = (ForecastRow) o;
+        return date == other.date
+                && weatherId == other.weatherId
+                && hasSameImagesAs(other)
+                && friendlyDate.equals(other.friendlyDate)
+                && description.equals(other.description)
+                && descriptionContentDescription.equals(other.descriptionContentDescription)
+                && high.equals(other.high)
+                && highContentDescription.equals(other.highContentDescription)
+                && low.equals(other.low)
+                && lowContentDescription.equals(other.lowContentDescription);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (date ^ (date >>> 32));
+        result = 31 * result + weatherId;
+        result = 31 * result + description.hashCode();
+        result = 31 * result + high.hashCode();
+        result = 31 * result + low.hashCode();
+        return result;
+    }
+
+    /**
+     * Formats the cursor's current row, which must have the columns of
+     * ForecastFragment.FORECAST_COLUMNS.
+     *
+     * @param artPack one of the WeatherConditions.ART_PACK constants, ART_PACK_NONE when the
+     *                local graphics are in use
+     */
+    static ForecastRow fromCursor(Context context, Cursor cursor, boolean isMetric, int artPack) {
+        int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_ID);
+        long date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        String description = cursor.getString(ForecastFragment.COL_WEATHER_DESC);
+        String high = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP), isMetric);
+        String low = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP), isMetric);
+
+        return new ForecastRow(date,
+                weatherId,
+                WeatherConditions.getIconResource(weatherId),
+                WeatherConditions.getArtResource(weatherId),
+                WeatherConditions.getArtUrl(context, weatherId, artPack),
+                Utility.getFriendlyDayString(context, date),
+                description,
+                context.getString(R.string.a11y_forecast, description),
+                high,
+                context.getString(R.string.a11y_high_temp, high),
+                low,
+                context.getString(R.string.a11y_low_temp, low));
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The preferred location's forecast as the list last showed it, kept in a small file so a
+ * cold start can draw the list on its first frame instead of waiting for the database.
+ * The sync adapter writes it after a sync of the preferred location, when the forecast changed
+ * or the saved rows no longer suit the day or the settings.
+ *
+ * The rows hold formatted text, so they're only used on the day, with the units, art pack
+ * and locale they were formatted for.
+ */
+public final class ForecastSnapshot {
+
+    private static final String LOG_TAG = ForecastSnapshot.class.getSimpleName();
+
+    private static final String FILE_NAME = "forecast_snapshot";
+    // Bump when the file layout changes.
+    private static final int VERSION = 1;
+
+    // What preload() read, waiting for the list to take it.
+    private static List<ForecastRow> sRows;
+    private static boolean sLoaded;
+
+    private ForecastSnapshot() {
+    }
+
+    /**
+     * Formats the location's forecast the way the list would and saves it.  Call it off the
+     * main thread.
+     */
+    public static void update(Context context, String locationSetting) {
+        update(context, locationSetting, true);
+    }
+
+    /**
+     * Like {@link #update(Context, String)}, but if the forecast didn't change, only when the
+     * saved rows were formatted for another location, day or settings.
+     */
+    public static void update(Context context, String locationSetting, boolean changed) {
+        if (!changed && isCurrent(context, locationSetting)) {
+            return;
+        }
+        Uri uri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(uri, ForecastFragment.FORECAST_COLUMNS,
+                null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return;
+        }
+        try {
+            write(context, locationSetting, ForecastLoader.formatRows(context, cursor));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Reads the snapshot in the background, so the list only has to take it.
+     */
+    public static synchronized void preload(Context context) {
+        if (!sLoaded) {
+            sRows = read(context, Utility.getPreferredLocation(context));
+            sLoaded = true;
+        }
+    }
+
+    /**
+     * @return the rows to show for the location until the loader has the real ones, or null.
+     * Only the first caller gets them.
+     */
+    static synchronized List<ForecastRow> take(Context context, String locationSetting) {
+        List<ForecastRow> rows = sLoaded ? sRows : read(context, locationSetting);
+        sRows = null;
+        sLoaded = true;
+        if (rows == null || rows.isEmpty() || !locationSetting.equals(
+                Utility.getPreferredLocation(context))) {
+            return null;
+        }
+        return rows;
+    }
+
+    static void write(Context context, String locationSetting, List<ForecastRow> rows) {
+        AtomicFile file = getFile(context);
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(VERSION);
+            writeKey(out, context, locationSetting);
+            out.writeInt(rows.size());
+            for (ForecastRow row : rows) {
+                out.writeLong(row.date);
+                out.writeInt(row.weatherId);
+                out.writeUTF(row.friendlyDate);
+                out.writeUTF(row.description);
+                out.writeUTF(row.descriptionContentDescription);
+                out.writeUTF(row.high);
+                out.writeUTF(row.highContentDescription);
+                out.writeUTF(row.low);
+                out.writeUTF(row.lowContentDescription);
+            }
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing the forecast snapshot", e);
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+    }
+
+    /**
+     * @return the saved rows, or null if there are none for the location, or they were
+     * formatted for another day or other settings.
+     */
+    static List<ForecastRow> read(Context context, String locationSetting) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(getFile(context).openRead());
+            if (in.readInt() != VERSION || !readKey(in, context, locationSetting)) {
+                return null;
+            }
+            int artPack = getArtPack(context);
+            int count = in.readInt();
+            List<ForecastRow> rows = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long date = in.readLong();
+                int weatherId = in.readInt();
+                // Resource ids can change between builds, so they're looked up again.
+                rows.add(new ForecastRow(date,
+                        weatherId,
+                        WeatherConditions.getIconResource(weatherId),
+                        WeatherConditions.getArtResource(weatherId),
+                        WeatherConditions.getArtUrl(context, weatherId, artPack),
+                        in.readUTF(),
+                        in.readUTF(),
+                        in.readUTF(),
+                        in.readUTF(),
+                        in.readUTF(),
+                        in.readUTF(),
+                        in.readUTF()));
+            }
+            return Collections.unmodifiableList(rows);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading the forecast snapshot", e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing more to read anyway.
+                }
+            }
+        }
+    }
+
+    /*
+        Whether the saved rows were formatted for the location, today and the current settings.
+        Only the start of the file is read.
+     */
+    static boolean isCurrent(Context context, String locationSetting) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(getFile(context).openRead());
+            return in.readInt() == VERSION && readKey(in, context, locationSetting);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing more to read anyway.
+                }
+            }
+        }
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    private static int getArtPack(Context context) {
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        return settings.usingLocalGraphics ? WeatherConditions.ART_PACK_NONE : settings.artPack;
+    }
+
+    // What the rows' text depends on.
+    private static void writeKey(DataOutputStream out, Context context, String locationSetting)
+            throws IOException {
+        out.writeUTF(locationSetting);
+        out.writeLong(WeatherContract.normalizeDate(System.currentTimeMillis()));
+        out.writeBoolean(SettingsSnapshot.get(context).isMetric);
+        out.writeInt(getArtPack(context));
+        out.writeUTF(Locale.getDefault().toString());
+    }
+
+    private static boolean readKey(DataInputStream in, Context context, String locationSetting)
+            throws IOException {
+        return in.readUTF().equals(locationSetting)
+                && in.readLong() == WeatherContract.normalizeDate(System.currentTimeMillis())
+                && in.readBoolean() == SettingsSnapshot.get(context).isMetric
+                && in.readInt() == getArtPack(context)
+                && in.readUTF().equals(Locale.getDefault().toString());
+    }
+}
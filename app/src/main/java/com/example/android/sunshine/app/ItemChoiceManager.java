@@ -49,6 +49,22 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        // Rows inserted or removed above a checked one move it, so follow it by its id.
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onChanged();
+        }
     };
 
 
@@ -58,6 +74,7 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -176,7 +193,8 @@ public class ItemChoiceManager {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
 
-            final long lastPosId = mAdapter.getItemId(lastPos);
+            final long lastPosId = lastPos < oldItemCount
+                    ? mAdapter.getItemId(lastPos) : RecyclerView.NO_ID;
             if (id != lastPosId) {
                 // Look around to see if the ID is nearby. If not, uncheck it.
                 final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
@@ -0,0 +1,117 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The sync status of every location, kept in memory and in a preferences file of its own.
+ * <p>
+ * A sync of many locations sets a status for each of them, from several threads.  Kept apart
+ * from the settings, those writes don't rewrite the settings file or wake every settings
+ * listener on the main thread, and a status that didn't change isn't written at all.  The
+ * statuses of locations that are gone are dropped with {@link #retainOnly}.
+ * <p>
+ * Statuses are keyed by location setting.
+ */
+public final class LocationStatusStore {
+
+    static final String PREFS_NAME = "location_status";
+
+    private static LocationStatusStore sInstance;
+
+    private final SharedPreferences mPrefs;
+    private final Map<String, Integer> mStatuses = new ConcurrentHashMap<>();
+
+    public static synchronized LocationStatusStore getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new LocationStatusStore(
+                    appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+            removeOldStatus(appContext);
+        }
+        return sInstance;
+    }
+
+    LocationStatusStore(SharedPreferences prefs) {
+        mPrefs = prefs;
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            if (entry.getValue() instanceof Integer) {
+                mStatuses.put(entry.getKey(), (Integer) entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads the statuses if nothing has yet.  Call it off the main thread early on.
+     */
+    public static void preload(Context context) {
+        getInstance(context);
+    }
+
+    @SunshineSyncAdapter.LocationStatus
+    public int getStatus(String location) {
+        Integer status = mStatuses.get(location);
+        return status == null ? SunshineSyncAdapter.LOCATION_STATUS_SERVER_UNKNOWN : status;
+    }
+
+    /**
+     * Sets the status of a location.  It can be read back right away, on any thread.
+     */
+    public synchronized void setStatus(String location,
+                                       @SunshineSyncAdapter.LocationStatus int status) {
+        Integer previous = mStatuses.put(location, status);
+        if (previous == null || previous != status) {
+            mPrefs.edit().putInt(location, status).apply();
+        }
+    }
+
+    /**
+     * Forgets the statuses of every location but the given ones.
+     */
+    public synchronized void retainOnly(Collection<String> locations) {
+        SharedPreferences.Editor editor = null;
+        for (String location : new ArrayList<>(mStatuses.keySet())) {
+            if (!locations.contains(location)) {
+                mStatuses.remove(location);
+                if (editor == null) {
+                    editor = mPrefs.edit();
+                }
+                editor.remove(location);
+            }
+        }
+        if (editor != null) {
+            editor.apply();
+        }
+    }
+
+    /**
+     * Tells the listener, on the main thread, which location's status changed.
+     */
+    public void registerListener(SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        mPrefs.registerOnSharedPreferenceChangeListener(listener);
+    }
+
+    public void unregisterListener(SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        mPrefs.unregisterOnSharedPreferenceChangeListener(listener);
+    }
+
+    /*
+        The status used to be a single key in the default preferences.  Removes it once it's
+        found there, so it doesn't linger in the settings file.
+     */
+    private static void removeOldStatus(Context context) {
+        SharedPreferences defaults = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_location_status);
+        if (defaults.contains(key)) {
+            defaults.edit().remove(key).apply();
+        }
+    }
+}
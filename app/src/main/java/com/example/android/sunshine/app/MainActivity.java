@@ -18,12 +18,14 @@ package com.example.android.sunshine.app;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Trace;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.app.ActivityOptionsCompat;
 import android.support.v4.util.Pair;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -65,7 +67,16 @@ public class MainActivity extends AppCompatActivity implements DetailFragment.On
                 getSupportFragmentManager().findFragmentById(R.id.fragment_forecast);
         fragment.setUseTodayLayout(!mTwoPane);
 
+        // Only hands the account lookup to a background thread; the lookup logs its own time.
+        // The timing is only logged in debug builds.
+        Trace.beginSection("initializeSyncAdapter");
+        long start = BuildConfig.DEBUG ? System.nanoTime() : 0;
         SunshineSyncAdapter.initializeSyncAdapter(this);
+        if (BuildConfig.DEBUG) {
+            Log.d(LOG_TAG, "initializeSyncAdapter took " + (System.nanoTime() - start) / 1000
+                    + " us on the main thread");
+        }
+        Trace.endSection();
     }
 
     @Override
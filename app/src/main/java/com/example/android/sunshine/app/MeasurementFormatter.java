@@ -0,0 +1,264 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Formats temperatures, wind, pressure and humidity the way their format strings would, but
+ * without going through String.format for every value.  Each format string is taken apart
+ * once per locale, and the whole numbers it shows are written digit by digit into a reused
+ * StringBuilder, using the locale's digits.
+ *
+ * The list formats on its loader thread and the widgets on their own threads, so every method
+ * is synchronized.
+ */
+public class MeasurementFormatter {
+
+    private static final float KMH_TO_MPH = .621371192237334f;
+
+    // Compass directions by 45 degree sector, starting from north.
+    private static final String[] DIRECTIONS = {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+
+    // Past this, a double may not have a whole part a long holds exactly.
+    private static final double MAX_FAST_VALUE = 1e15;
+
+    private static MeasurementFormatter sInstance;
+
+    private final Context mContext;
+    private final StringBuilder mBuilder = new StringBuilder();
+    private final char[] mDigits = new char[20];
+
+    // What the templates below were made for.
+    private Locale mLocale;
+    private char mZeroDigit;
+    private Template mTemperature;
+    private Template mWindKmh;
+    private Template mWindMph;
+    private Template mPressure;
+    private Template mHumidity;
+
+    public static synchronized MeasurementFormatter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MeasurementFormatter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    MeasurementFormatter(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * @see Utility#formatTemperature
+     */
+    public synchronized String formatTemperature(double temperature, boolean isMetric) {
+        updateLocale();
+        double temp;
+        if (!isMetric) {
+            temp = 9 * temperature / 5 + 32;
+        } else {
+            temp = temperature;
+        }
+        return format(mTemperature, R.string.format_temperature, temp, null);
+    }
+
+    /**
+     * @see Utility#getFormattedWind
+     */
+    public synchronized String formatWind(float windSpeed, float degrees, boolean isMetric) {
+        updateLocale();
+        Template template;
+        int formatId;
+        if (isMetric) {
+            template = mWindKmh;
+            formatId = R.string.format_wind_kmh;
+        } else {
+            template = mWindMph;
+            formatId = R.string.format_wind_mph;
+            windSpeed = KMH_TO_MPH * windSpeed;
+        }
+        return format(template, formatId, windSpeed, getDirection(degrees));
+    }
+
+    public synchronized String formatPressure(float pressure) {
+        updateLocale();
+        return format(mPressure, R.string.format_pressure, pressure, null);
+    }
+
+    public synchronized String formatHumidity(float humidity) {
+        updateLocale();
+        return format(mHumidity, R.string.format_humidity, humidity, null);
+    }
+
+    /**
+     * @return the compass direction, e.g "NW", the wind blows from.
+     */
+    static String getDirection(float degrees) {
+        if (degrees >= 337.5 || degrees < 22.5) {
+            return DIRECTIONS[0];
+        } else if (degrees < 337.5) {
+            return DIRECTIONS[(int) ((degrees + 22.5) / 45)];
+        }
+        // Not a number.
+        return "Unknown";
+    }
+
+    private void updateLocale() {
+        Locale locale = mContext.getResources().getConfiguration().locale;
+        if (locale.equals(mLocale)) {
+            return;
+        }
+        mLocale = locale;
+        mZeroDigit = DecimalFormatSymbols.getInstance(locale).getZeroDigit();
+        mTemperature = Template.parse(mContext.getString(R.string.format_temperature), 1);
+        mWindKmh = Template.parse(mContext.getString(R.string.format_wind_kmh), 2);
+        mWindMph = Template.parse(mContext.getString(R.string.format_wind_mph), 2);
+        mPressure = Template.parse(mContext.getString(R.string.format_pressure), 1);
+        mHumidity = Template.parse(mContext.getString(R.string.format_humidity), 1);
+    }
+
+    /*
+        Fills in a template whose first argument is the number and whose second, if it has one,
+        is the text.  Falls back on the format string for anything the template can't show.
+     */
+    private String format(Template template, int formatId, double number, String text) {
+        if (template == null || Double.isNaN(number) || Double.isInfinite(number)
+                || Math.abs(number) >= MAX_FAST_VALUE) {
+            return text == null
+                    ? String.format(mLocale, mContext.getString(formatId), number)
+                    : String.format(mLocale, mContext.getString(formatId), number, text);
+        }
+
+        StringBuilder sb = mBuilder;
+        sb.setLength(0);
+        for (int i = 0; i < template.args.length; i++) {
+            sb.append(template.literals[i]);
+            if (template.args[i] == 0) {
+                appendRounded(sb, number);
+            } else {
+                sb.append(text);
+            }
+        }
+        sb.append(template.literals[template.args.length]);
+        return sb.toString();
+    }
+
+    /*
+        Appends the number rounded half up to a whole number, like "%.0f" does: with a minus
+        sign for anything negative, even when it rounds to zero.
+     */
+    private void appendRounded(StringBuilder sb, double number) {
+        if (Double.compare(number, 0.0) < 0) {
+            sb.append('-');
+        }
+        double magnitude = Math.abs(number);
+        long whole = (long) magnitude;
+        if (magnitude - whole >= 0.5) {
+            whole++;
+        }
+
+        int length = 0;
+        do {
+            mDigits[length++] = (char) (mZeroDigit + whole % 10);
+            whole /= 10;
+        } while (whole > 0);
+        while (length > 0) {
+            sb.append(mDigits[--length]);
+        }
+    }
+
+    /*
+        A format string taken apart: the text between its arguments, and which argument goes
+        in each gap.  Argument 0 is a number shown with "%.0f", argument 1 a string shown with
+        "%s".
+     */
+    private static final class Template {
+        final String[] literals;
+        final int[] args;
+
+        Template(String[] literals, int[] args) {
+            this.literals = literals;
+            this.args = args;
+        }
+
+        /*
+            Returns null if the format uses anything other than the two arguments above, so
+            the caller falls back on String.format.
+         */
+        static Template parse(String format, int argCount) {
+            List<String> literals = new ArrayList<>();
+            List<Integer> args = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+            int nextArg = 0;
+            int i = 0;
+            while (i < format.length()) {
+                char c = format.charAt(i++);
+                if (c != '%') {
+                    literal.append(c);
+                    continue;
+                }
+                if (i < format.length() && format.charAt(i) == '%') {
+                    literal.append('%');
+                    i++;
+                    continue;
+                }
+
+                // %[index$][width][.precision]conversion
+                int start = i;
+                while (i < format.length() && Character.isDigit(format.charAt(i))) {
+                    i++;
+                }
+                int arg;
+                int width = -1;
+                if (i < format.length() && format.charAt(i) == '$' && i > start) {
+                    arg = Integer.parseInt(format.substring(start, i)) - 1;
+                    start = ++i;
+                    while (i < format.length() && Character.isDigit(format.charAt(i))) {
+                        i++;
+                    }
+                } else {
+                    arg = nextArg++;
+                }
+                if (i > start) {
+                    width = Integer.parseInt(format.substring(start, i));
+                }
+                int precision = -1;
+                if (i < format.length() && format.charAt(i) == '.') {
+                    start = ++i;
+                    while (i < format.length() && Character.isDigit(format.charAt(i))) {
+                        i++;
+                    }
+                    if (i == start) {
+                        return null;
+                    }
+                    precision = Integer.parseInt(format.substring(start, i));
+                }
+                if (i >= format.length() || arg < 0 || arg >= argCount) {
+                    return null;
+                }
+                char conversion = format.charAt(i++);
+                if (arg == 0 && (conversion != 'f' || precision != 0 || width > 1)) {
+                    return null;
+                }
+                if (arg == 1 && (conversion != 's' || precision != -1 || width != -1)) {
+                    return null;
+                }
+
+                literals.add(literal.toString());
+                literal.setLength(0);
+                args.add(arg);
+            }
+            literals.add(literal.toString());
+
+            int[] argArray = new int[args.size()];
+            for (int j = 0; j < argArray.length; j++) {
+                argArray[j] = args.get(j);
+            }
+            return new Template(literals.toArray(new String[literals.size()]), argArray);
+        }
+    }
+}
@@ -16,17 +16,22 @@
 package com.example.android.sunshine.app;
 
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.ListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
+import android.text.format.DateUtils;
 
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SunshineJobScheduler;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncCircuitBreaker;
+import com.example.android.sunshine.app.sync.SyncRequestCoalescer;
 
 import static com.example.android.sunshine.app.R.string.pref_location_key;
 
@@ -41,6 +46,9 @@ import static com.example.android.sunshine.app.R.string.pref_location_key;
 public class SettingsActivity extends PreferenceActivity
         implements Preference.OnPreferenceChangeListener, SharedPreferences.OnSharedPreferenceChangeListener {
 
+    // Only in debug builds.
+    private Preference mSyncHealthPreference;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -52,6 +60,46 @@ public class SettingsActivity extends PreferenceActivity
         bindPreferenceSummaryToValue(findPreference(getString(pref_location_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_units_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_type_image)));
+        bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_sync_scheduler_key)));
+
+        if (BuildConfig.DEBUG) {
+            mSyncHealthPreference = new Preference(this);
+            mSyncHealthPreference.setTitle(R.string.pref_sync_health_label);
+            mSyncHealthPreference.setPersistent(false);
+            mSyncHealthPreference.setOnPreferenceClickListener(
+                    new Preference.OnPreferenceClickListener() {
+                        @Override
+                        public boolean onPreferenceClick(Preference preference) {
+                            SyncCircuitBreaker.getInstance(SettingsActivity.this)
+                                    .recordSuccess(SunshineSyncAdapter.getEndpoint());
+                            updateSyncHealth();
+                            return true;
+                        }
+                    });
+            getPreferenceScreen().addPreference(mSyncHealthPreference);
+        }
+    }
+
+    /*
+        Shows what the circuit breaker knows about the forecast server, in debug builds.
+     */
+    private void updateSyncHealth() {
+        if (mSyncHealthPreference == null) {
+            return;
+        }
+        SyncCircuitBreaker breaker = SyncCircuitBreaker.getInstance(this);
+        String endpoint = SunshineSyncAdapter.getEndpoint();
+        int failures = breaker.getFailures(endpoint);
+        if (failures == 0) {
+            mSyncHealthPreference.setSummary(getString(R.string.pref_sync_health_ok, endpoint));
+        } else {
+            String retryAt = DateUtils.formatDateTime(this, breaker.getRetryAt(endpoint),
+                    DateUtils.FORMAT_SHOW_TIME);
+            int format = breaker.isOpen(endpoint)
+                    ? R.string.pref_sync_health_open : R.string.pref_sync_health_backing_off;
+            mSyncHealthPreference.setSummary(getString(format, endpoint, failures, retryAt,
+                    breaker.getLastError(endpoint)));
+        }
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
@@ -62,16 +110,15 @@ public class SettingsActivity extends PreferenceActivity
 
     @Override
     protected void onResume() {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
-        sp.registerOnSharedPreferenceChangeListener(this);
+        SettingsSnapshot.registerListener(this, this);
         super.onResume();
+        updateSyncHealth();
     }
 
     // Unregisters a shared preference change listener
     @Override
     protected void onPause() {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
-        sp.unregisterOnSharedPreferenceChangeListener(this);
+        SettingsSnapshot.unregisterListener(this);
         super.onPause();
     }
 
@@ -137,13 +184,23 @@ public class SettingsActivity extends PreferenceActivity
             // we've changed the location
             // first clear locationStatus
             Utility.resetLocationStauts(this);
-            SunshineSyncAdapter.syncImmediately(this);
+            // Someone typing a few locations in a row only gets the last one synced.
+            SyncRequestCoalescer.getInstance().request(this, Utility.getPreferredLocation(this));
         } else if (key.equals(getString(R.string.pref_units_key))) {
-            // units have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // units have changed. redraw the weather entries, the data itself is the same
+            Utility.notifyDisplaySettingsChanged(this);
         } else if ( key.equals(getString(R.string.pref_type_image)) ) {
-            // art pack have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // art pack have changed. redraw the weather entries, the data itself is the same
+            Utility.notifyDisplaySettingsChanged(this);
+        } else if (key.equals(getString(R.string.pref_sync_scheduler_key))) {
+            // Move the periodic sync over; it talks to the account and job services.
+            final Context appContext = getApplicationContext();
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    SunshineJobScheduler.applySelectedScheduler(appContext);
+                }
+            });
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The settings Sunshine reads while showing and syncing weather, read out of the default
+ * SharedPreferences once and kept for the whole process.  A snapshot never changes; when a
+ * preference changes, a new one replaces it.
+ *
+ * Anything that reacts to preference changes should register with
+ * {@link #registerListener} rather than with the SharedPreferences, so it's only told once
+ * the snapshot has caught up.
+ */
+public final class SettingsSnapshot {
+
+    public final String location;
+    public final boolean isMetric;
+    public final boolean usingLocalGraphics;
+    public final boolean isNotify;
+    public final String imageType;
+    // The WeatherConditions.ART_PACK_* constant imageType picks.
+    public final int artPack;
+    // Whether background work runs as JobScheduler jobs rather than sync adapter syncs.
+    public final boolean useJobScheduler;
+
+    private static final AtomicReference<SettingsSnapshot> sSnapshot = new AtomicReference<>();
+    private static final List<SharedPreferences.OnSharedPreferenceChangeListener> sListeners =
+            new CopyOnWriteArrayList<>();
+    // SharedPreferences only holds its listeners weakly.
+    private static SharedPreferences.OnSharedPreferenceChangeListener sPreferenceListener;
+    private static volatile int sLoadCount;
+
+    private SettingsSnapshot(String location, boolean isMetric, boolean usingLocalGraphics,
+                             boolean isNotify, String imageType, int artPack,
+                             boolean useJobScheduler) {
+        this.location = location;
+        this.isMetric = isMetric;
+        this.usingLocalGraphics = usingLocalGraphics;
+        this.isNotify = isNotify;
+        this.imageType = imageType;
+        this.artPack = artPack;
+        this.useJobScheduler = useJobScheduler;
+    }
+
+    /**
+     * @return the current settings, reading them the first time.
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot snapshot = sSnapshot.get();
+        return snapshot != null ? snapshot : load(context);
+    }
+
+    /**
+     * Reads the settings if nothing has yet.  Call it off the main thread early on, so the
+     * main thread doesn't wait for the preferences file.
+     */
+    public static void preload(Context context) {
+        get(context);
+    }
+
+    /**
+     * Tells the listener about preference changes, after the snapshot has them.
+     */
+    public static void registerListener(
+            Context context, SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        get(context);
+        if (!sListeners.contains(listener)) {
+            sListeners.add(listener);
+        }
+    }
+
+    public static void unregisterListener(
+            SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        sListeners.remove(listener);
+    }
+
+    /**
+     * @return how many times the settings have been read out of the preferences, for tests.
+     */
+    static int getLoadCount() {
+        return sLoadCount;
+    }
+
+    private static synchronized SettingsSnapshot load(Context context) {
+        SettingsSnapshot snapshot = sSnapshot.get();
+        if (snapshot == null) {
+            final Context appContext = context.getApplicationContext();
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+            sPreferenceListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    onPreferenceChanged(appContext, prefs, key);
+                }
+            };
+            prefs.registerOnSharedPreferenceChangeListener(sPreferenceListener);
+            snapshot = read(appContext, prefs);
+            sSnapshot.set(snapshot);
+        }
+        return snapshot;
+    }
+
+    // Called on the main thread.
+    private static void onPreferenceChanged(Context context, SharedPreferences prefs,
+                                            String key) {
+        sSnapshot.set(read(context, prefs));
+
+        for (SharedPreferences.OnSharedPreferenceChangeListener listener : sListeners) {
+            listener.onSharedPreferenceChanged(prefs, key);
+        }
+    }
+
+    private static SettingsSnapshot read(Context context, SharedPreferences prefs) {
+        sLoadCount++;
+        String location = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String metric = context.getString(R.string.pref_units_metric);
+        boolean isMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        boolean usingLocalGraphics = prefs.getString(
+                context.getString(R.string.pref_art_pack_key), sunshineArtPack)
+                .equals(sunshineArtPack);
+
+        boolean isNotify = prefs.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                context.getString(R.string.pref_enable_notifications_default).equals("true"));
+
+        String imageType = prefs.getString(context.getString(R.string.pref_type_image),
+                context.getString(R.string.pref_type_mono));
+        int artPack = imageType.equals(context.getString(R.string.pref_type_colored))
+                ? WeatherConditions.ART_PACK_COLORED : WeatherConditions.ART_PACK_MONO;
+
+        String syncAdapter = context.getString(R.string.pref_sync_scheduler_sync_adapter);
+        boolean useJobScheduler = !prefs.getString(
+                context.getString(R.string.pref_sync_scheduler_key), syncAdapter)
+                .equals(syncAdapter);
+
+        return new SettingsSnapshot(location, isMetric, usingLocalGraphics, isNotify,
+                imageType, artPack, useJobScheduler);
+    }
+}
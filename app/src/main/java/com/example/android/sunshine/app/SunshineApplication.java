@@ -0,0 +1,34 @@
+package com.example.android.sunshine.app;
+
+import android.app.Application;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+
+public class SunshineApplication extends Application {
+
+    private static long sStartTime;
+
+    /**
+     * @return how long ago, in milliseconds, the process started.
+     */
+    public static long getMillisSinceStart() {
+        return SystemClock.elapsedRealtime() - sStartTime;
+    }
+
+    @Override
+    public void onCreate() {
+        sStartTime = SystemClock.elapsedRealtime();
+        super.onCreate();
+        // Read the settings in the background while the first activity starts; the list and
+        // the widgets read them for every row.  Then the sync statuses, for the list's empty
+        // view, and the last forecast, for the list's first frame.
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                SettingsSnapshot.preload(SunshineApplication.this);
+                LocationStatusStore.preload(SunshineApplication.this);
+                ForecastSnapshot.preload(SunshineApplication.this);
+            }
+        });
+    }
+}
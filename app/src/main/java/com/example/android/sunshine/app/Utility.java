@@ -15,26 +15,23 @@
  */
 package com.example.android.sunshine.app;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
-import android.content.SharedPreferences;
+import android.content.Intent;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.preference.PreferenceManager;
-import android.text.format.Time;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
 
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
 
 public class Utility {
     public static String getPreferredLocation(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        return prefs.getString(context.getString(R.string.pref_location_key),
-                context.getString(R.string.pref_location_default));
+        return SettingsSnapshot.get(context).location;
     }
 
     /**
@@ -44,61 +41,100 @@ public class Utility {
      * @return true if Sunshine is using local graphics, false otherwise.
      */
     public static boolean usingLocalGraphics(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
-        return prefs.getString(context.getString(R.string.pref_art_pack_key),
-                sunshineArtPack).equals(sunshineArtPack);
+        return SettingsSnapshot.get(context).usingLocalGraphics;
     }
 
     public static boolean isNotify(Context context) {
-        String defaultValue = context.getString(R.string.pref_enable_notifications_default);
-        boolean deValue = false;
-        if (defaultValue.equals("true")) {
-            deValue = true;
-        }
+        return SettingsSnapshot.get(context).isNotify;
+    }
 
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        return prefs.getBoolean(context.getString(R.string.pref_enable_notifications_key),
-                deValue);
+    /**
+     * @return true if background work is scheduled with JobScheduler rather than run by the
+     * sync adapter's periodic sync.
+     */
+    public static boolean useJobScheduler(Context context) {
+        return SettingsSnapshot.get(context).useJobScheduler;
     }
 
+    /**
+     * Each location keeps its own sync status, so a failure fetching one location doesn't
+     * show up as an error for the one the user is looking at.  See {@link LocationStatusStore}.
+     */
     public static void setLocationStatus(Context context,
                                          @SunshineSyncAdapter.LocationStatus int locationStatus) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        prefs.edit().putInt(
-                context.getString(R.string.pref_location_status), locationStatus)
-                .apply();
+        setLocationStatus(context, getPreferredLocation(context), locationStatus);
+    }
+
+    public static void setLocationStatus(Context context, String location,
+                                         @SunshineSyncAdapter.LocationStatus int locationStatus) {
+        LocationStatusStore.getInstance(context).setStatus(location, locationStatus);
     }
 
     public static int getLocationStauts(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        return prefs.getInt(context.getString(R.string.pref_location_status),
-                SunshineSyncAdapter.LOCATION_STATUS_SERVER_UNKNOWN);
+        return getLocationStauts(context, getPreferredLocation(context));
+    }
+
+    public static int getLocationStauts(Context context, String location) {
+        return LocationStatusStore.getInstance(context).getStatus(location);
     }
 
     public static void resetLocationStauts(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        prefs.edit().putInt(
-                context.getString(R.string.pref_location_status),
-                SunshineSyncAdapter.LOCATION_STATUS_SERVER_UNKNOWN)
-                .apply();
+        setLocationStatus(context, SunshineSyncAdapter.LOCATION_STATUS_SERVER_UNKNOWN);
+    }
+
+    public static final String ACTION_DISPLAY_SETTINGS_CHANGED =
+            "com.example.android.sunshine.app.ACTION_DISPLAY_SETTINGS_CHANGED";
+
+    // Bumped on the main thread each time the units or the art pack change.
+    private static int sDisplaySettingsGeneration;
+    private static long sDisplaySettingsChangedTime;
+
+    /**
+     * Tells everything showing weather that the units or the art pack changed.  No data
+     * changed, so nothing should query the provider again: the fragments rebind the rows they
+     * hold when they resume, and the widgets are asked to redraw.
+     */
+    public static void notifyDisplaySettingsChanged(Context context) {
+        sDisplaySettingsGeneration++;
+        sDisplaySettingsChangedTime = SystemClock.elapsedRealtime();
+        context.sendBroadcast(new Intent(ACTION_DISPLAY_SETTINGS_CHANGED)
+                .setPackage(context.getPackageName()));
+    }
+
+    /**
+     * @return a number that changes whenever the weather needs to be shown differently.
+     * Remember it when binding, and rebind when it no longer matches.
+     */
+    public static int getDisplaySettingsGeneration() {
+        return sDisplaySettingsGeneration;
+    }
+
+    /**
+     * Logs how long after the display settings changed the view's next frame was drawn.
+     * Call it right after rebinding the view with the new settings.
+     */
+    public static void logFirstFrameAfterDisplaySettingsChanged(final View view,
+                                                                final String logTag,
+                                                                final String description) {
+        final long changedTime = sDisplaySettingsChangedTime;
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.d(logTag, "Redrew " + description + ", first frame "
+                        + (SystemClock.elapsedRealtime() - changedTime)
+                        + " ms after the display settings changed");
+                return true;
+            }
+        });
     }
 
     public static boolean isMetric(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        return prefs.getString(context.getString(R.string.pref_units_key),
-                context.getString(R.string.pref_units_metric))
-                .equals(context.getString(R.string.pref_units_metric));
+        return SettingsSnapshot.get(context).isMetric;
     }
 
     public static String formatTemperature(Context context, double temperature, boolean isMetric) {
-        double temp;
-        if (!isMetric) {
-            temp = 9 * temperature / 5 + 32;
-        } else {
-            temp = temperature;
-        }
-        return context.getString(R.string.format_temperature, temp);
+        return MeasurementFormatter.getInstance(context).formatTemperature(temperature, isMetric);
     }
 
     public static String formatDate(long dateInMilliseconds) {
@@ -118,37 +154,13 @@ public class Utility {
      * @param dateInMillis The date in milliseconds
      * @return a user-friendly representation of the date.
      */
-    @SuppressLint("StringFormatMatches")
     public static String getFriendlyDayString(Context context, long dateInMillis) {
         // The day string for forecast uses the following logic:
         // For today: "Today, June 8"
         // For tomorrow:  "Tomorrow"
         // For the next 5 days: "Wednesday" (just the day name)
         // For all days after that: "Mon Jun 8"
-
-        Time time = new Time();
-        time.setToNow();
-        long currentTime = System.currentTimeMillis();
-        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
-        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
-
-        // If the date we're building the String for is today's date, the format
-        // is "Today, June 24"
-        if (julianDay == currentJulianDay) {
-            String today = context.getString(R.string.today);
-            int formatId = R.string.format_full_friendly_date;
-            return String.format(context.getString(
-                    formatId,
-                    today,
-                    getFormattedMonthDay(context, dateInMillis)));
-        } else if (julianDay < currentJulianDay + 7) {
-            // If the input date is less than a week in the future, just return the day name.
-            return getDayName(context, dateInMillis);
-        } else {
-            // Otherwise, use the form "Mon Jun 3"
-            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
-            return shortenedDateFormat.format(dateInMillis);
-        }
+        return DayFormatter.getInstance(context).getFriendlyDayString(dateInMillis);
     }
 
     /**
@@ -162,22 +174,7 @@ public class Utility {
     public static String getDayName(Context context, long dateInMillis) {
         // If the date is today, return the localized version of "Today" instead of the actual
         // day name.
-
-        Time t = new Time();
-        t.setToNow();
-        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
-        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
-        if (julianDay == currentJulianDay) {
-            return context.getString(R.string.today);
-        } else if (julianDay == currentJulianDay + 1) {
-            return context.getString(R.string.tomorrow);
-        } else {
-            Time time = new Time();
-            time.setToNow();
-            // Otherwise, the format is just the day of the week (e.g "Wednesday".
-            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
-            return dayFormat.format(dateInMillis);
-        }
+        return DayFormatter.getInstance(context).getDayName(dateInMillis);
     }
 
     /**
@@ -189,45 +186,12 @@ public class Utility {
      * @return The day in the form of a string formatted "December 6"
      */
     public static String getFormattedMonthDay(Context context, long dateInMillis) {
-        Time time = new Time();
-        time.setToNow();
-        SimpleDateFormat dbDateFormat = new SimpleDateFormat(Utility.DATE_FORMAT);
-        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
-        String monthDayString = monthDayFormat.format(dateInMillis);
-        return monthDayString;
+        return DayFormatter.getInstance(context).getFormattedMonthDay(dateInMillis);
     }
 
     public static String getFormattedWind(Context context, float windSpeed, float degrees) {
-        int windFormat;
-        if (Utility.isMetric(context)) {
-            windFormat = R.string.format_wind_kmh;
-        } else {
-            windFormat = R.string.format_wind_mph;
-            windSpeed = .621371192237334f * windSpeed;
-        }
-
-        // From wind direction in degrees, determine compass direction as a string (e.g NW)
-        // You know what's fun, writing really long if/else statements with tons of possible
-        // conditions.  Seriously, try it!
-        String direction = "Unknown";
-        if (degrees >= 337.5 || degrees < 22.5) {
-            direction = "N";
-        } else if (degrees >= 22.5 && degrees < 67.5) {
-            direction = "NE";
-        } else if (degrees >= 67.5 && degrees < 112.5) {
-            direction = "E";
-        } else if (degrees >= 112.5 && degrees < 157.5) {
-            direction = "SE";
-        } else if (degrees >= 157.5 && degrees < 202.5) {
-            direction = "S";
-        } else if (degrees >= 202.5 && degrees < 247.5) {
-            direction = "SW";
-        } else if (degrees >= 247.5 && degrees < 292.5) {
-            direction = "W";
-        } else if (degrees >= 292.5 && degrees < 337.5) {
-            direction = "NW";
-        }
-        return String.format(context.getString(windFormat), windSpeed, direction);
+        return MeasurementFormatter.getInstance(context).formatWind(windSpeed, degrees,
+                Utility.isMetric(context));
     }
 
     /**
@@ -238,32 +202,7 @@ public class Utility {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getIconResourceForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
-        }
-        return -1;
+        return WeatherConditions.getIconResource(weatherId);
     }
 
     /**
@@ -274,32 +213,7 @@ public class Utility {
      * @return resource id for the corresponding image. -1 if no relation is found.
      */
     public static int getArtResourceForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.art_clouds;
-        }
-        return -1;
+        return WeatherConditions.getArtResource(weatherId);
     }
 
     /**
@@ -311,46 +225,12 @@ public class Utility {
      * @return url for the corresponding weather artwork. null if no relation is found.
      */
     public static String getArtUrlForWeatherCondition(Context context, int weatherId) {
-        String type = getPreferedImageTypes(context);
-        String path = null;
-        if (type.equals(context.getString(R.string.pref_type_colored))) {
-            path = context.getString(R.string.pref_art_pack_sunshine);
-        } else {
-            path = context.getString(R.string.pref_art_pack_cute_dogs);
-        }
-
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return String.format(Locale.US, path, "storm");
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return String.format(Locale.US, path, "light_rain");
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return String.format(Locale.US, path, "rain");
-        } else if (weatherId == 511) {
-            return String.format(Locale.US, path, "snow");
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return String.format(Locale.US, path, "rain");
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return String.format(Locale.US, path, "snow");
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return String.format(Locale.US, path, "fog");
-        } else if (weatherId == 761 || weatherId == 781) {
-            return String.format(Locale.US, path, "storm");
-        } else if (weatherId == 800) {
-            return String.format(Locale.US, path, "clear");
-        } else if (weatherId == 801) {
-            return String.format(Locale.US, path, "light_clouds");
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return String.format(Locale.US, path, "clouds");
-        }
-        return null;
+        return WeatherConditions.getArtUrl(context, weatherId,
+                WeatherConditions.getArtPack(context));
     }
 
     public static String getPreferedImageTypes(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        return prefs.getString(context.getString(R.string.pref_type_image),
-                context.getString(R.string.pref_type_mono));
+        return SettingsSnapshot.get(context).imageType;
     }
 
     public static boolean isNetworkConnected(Context context) {
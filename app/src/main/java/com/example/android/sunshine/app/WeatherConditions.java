@@ -0,0 +1,157 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Locale;
+
+/**
+ * The icon, art and art URLs for every OpenWeatherMap weather condition id, worked out once
+ * and then looked up by id.
+ */
+public final class WeatherConditions {
+
+    /**
+     * Art pack for when Sunshine is using local graphics, so there are no art URLs.
+     */
+    public static final int ART_PACK_NONE = -1;
+    public static final int ART_PACK_COLORED = 0;
+    public static final int ART_PACK_MONO = 1;
+    private static final int NUM_ART_PACKS = 2;
+
+    // Condition ids are three digits.
+    private static final int NUM_WEATHER_IDS = 1000;
+
+    private static final class Condition {
+        final int index;
+        final int iconResource;
+        final int artResource;
+        // Fills in the art pack URL format.
+        final String artName;
+
+        Condition(int index, int iconResource, int artResource, String artName) {
+            this.index = index;
+            this.iconResource = iconResource;
+            this.artResource = artResource;
+            this.artName = artName;
+        }
+    }
+
+    private static final Condition STORM =
+            new Condition(0, R.drawable.ic_storm, R.drawable.art_storm, "storm");
+    private static final Condition LIGHT_RAIN =
+            new Condition(1, R.drawable.ic_light_rain, R.drawable.art_light_rain, "light_rain");
+    private static final Condition RAIN =
+            new Condition(2, R.drawable.ic_rain, R.drawable.art_rain, "rain");
+    private static final Condition FREEZING_RAIN =
+            new Condition(3, R.drawable.ic_snow, R.drawable.art_snow, "snow");
+    private static final Condition SNOW =
+            new Condition(4, R.drawable.ic_snow, R.drawable.art_rain, "snow");
+    private static final Condition FOG =
+            new Condition(5, R.drawable.ic_fog, R.drawable.art_fog, "fog");
+    private static final Condition CLEAR =
+            new Condition(6, R.drawable.ic_clear, R.drawable.art_clear, "clear");
+    private static final Condition LIGHT_CLOUDS =
+            new Condition(7, R.drawable.ic_light_clouds, R.drawable.art_light_clouds,
+                    "light_clouds");
+    private static final Condition CLOUDS =
+            new Condition(8, R.drawable.ic_cloudy, R.drawable.art_clouds, "clouds");
+    private static final Condition[] ALL_CONDITIONS = {STORM, LIGHT_RAIN, RAIN, FREEZING_RAIN,
+            SNOW, FOG, CLEAR, LIGHT_CLOUDS, CLOUDS};
+
+    // Based on weather code data found at:
+    // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+    private static final Condition[] CONDITIONS = new Condition[NUM_WEATHER_IDS];
+
+    static {
+        putConditions(200, 232, STORM);
+        putConditions(300, 321, LIGHT_RAIN);
+        putConditions(500, 504, RAIN);
+        putConditions(511, 511, FREEZING_RAIN);
+        putConditions(520, 531, RAIN);
+        putConditions(600, 622, SNOW);
+        putConditions(701, 761, FOG);
+        putConditions(781, 781, STORM);
+        putConditions(800, 800, CLEAR);
+        putConditions(801, 801, LIGHT_CLOUDS);
+        putConditions(802, 804, CLOUDS);
+    }
+
+    // The art URLs of every condition, by art pack and then condition index.  Built on first
+    // use, since the URL formats are resources.
+    private static volatile String[][] sArtUrls;
+
+    private WeatherConditions() {
+    }
+
+    private static void putConditions(int firstWeatherId, int lastWeatherId, Condition condition) {
+        for (int weatherId = firstWeatherId; weatherId <= lastWeatherId; weatherId++) {
+            CONDITIONS[weatherId] = condition;
+        }
+    }
+
+    private static Condition getCondition(int weatherId) {
+        return weatherId >= 0 && weatherId < NUM_WEATHER_IDS ? CONDITIONS[weatherId] : null;
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return resource id for the corresponding icon. -1 if no relation is found.
+     */
+    public static int getIconResource(int weatherId) {
+        Condition condition = getCondition(weatherId);
+        return condition == null ? -1 : condition.iconResource;
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return resource id for the corresponding image. -1 if no relation is found.
+     */
+    public static int getArtResource(int weatherId) {
+        Condition condition = getCondition(weatherId);
+        return condition == null ? -1 : condition.artResource;
+    }
+
+    /**
+     * Reads the preferred art pack, so a caller looking up many URLs only reads it once.
+     *
+     * @return {@link #ART_PACK_COLORED} or {@link #ART_PACK_MONO}
+     */
+    public static int getArtPack(Context context) {
+        return SettingsSnapshot.get(context).artPack;
+    }
+
+    /**
+     * @param context   Context to use for retrieving the URL formats
+     * @param weatherId from OpenWeatherMap API response
+     * @param artPack   one of the ART_PACK constants
+     * @return url for the corresponding weather artwork. null if no relation is found, or the
+     * art pack is {@link #ART_PACK_NONE}.
+     */
+    public static String getArtUrl(Context context, int weatherId, int artPack) {
+        Condition condition = getCondition(weatherId);
+        if (condition == null || artPack == ART_PACK_NONE) {
+            return null;
+        }
+        return getArtUrls(context)[artPack][condition.index];
+    }
+
+    private static String[][] getArtUrls(Context context) {
+        String[][] artUrls = sArtUrls;
+        if (artUrls == null) {
+            // Two threads may both build these, but they build the same URLs.
+            String[] formats = new String[NUM_ART_PACKS];
+            formats[ART_PACK_COLORED] = context.getString(R.string.pref_art_pack_sunshine);
+            formats[ART_PACK_MONO] = context.getString(R.string.pref_art_pack_cute_dogs);
+
+            artUrls = new String[NUM_ART_PACKS][ALL_CONDITIONS.length];
+            for (int artPack = 0; artPack < NUM_ART_PACKS; artPack++) {
+                for (Condition condition : ALL_CONDITIONS) {
+                    artUrls[artPack][condition.index] =
+                            String.format(Locale.US, formats[artPack], condition.artName);
+                }
+            }
+            sArtUrls = artUrls;
+        }
+        return artUrls;
+    }
+}
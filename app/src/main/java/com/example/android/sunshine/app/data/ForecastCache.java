@@ -0,0 +1,319 @@
+package com.example.android.sunshine.app.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.CursorIndexOutOfBoundsException;
+import android.os.Bundle;
+import android.util.LruCache;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An in-memory LRU cache of forecast query results, so the widgets, the notification and the
+ * detail pane asking for the same few rows over and over don't each run the location join
+ * again.
+ * <p>
+ * Results are held as immutable snapshots of their rows, and every hit gets a fresh cursor
+ * reading them in place.  The cache is bounded by an estimate of the snapshots' size
+ * in bytes rather than by entry count, since a whole forecast and a single day differ in size
+ * by more than an order of magnitude.
+ * <p>
+ * A snapshot read from the database while a write was being committed might hold the old
+ * rows, so every invalidation bumps a generation number and a snapshot is only stored if no
+ * invalidation happened since its query started.  A result that couldn't be stored, because
+ * of such an invalidation or because it's bigger than the whole cache, is handed back as the
+ * database's own cursor rather than copied.
+ */
+class ForecastCache {
+
+    // Enough for the forecasts of a few dozen locations.
+    static final int DEFAULT_MAX_BYTES = 256 * 1024;
+
+    /**
+     * The rows of one query result, copied out of the database cursor.
+     */
+    private static final class Snapshot {
+        final String locationSetting;
+        final String[] columnNames;
+        final Object[][] rows;
+        final int bytes;
+
+        Snapshot(String locationSetting, String[] columnNames, Object[][] rows, int bytes) {
+            this.locationSetting = locationSetting;
+            this.columnNames = columnNames;
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+    }
+
+    private final LruCache<String, Snapshot> mSnapshots;
+    private long mGeneration;
+
+    ForecastCache(int maxBytes) {
+        mSnapshots = new LruCache<String, Snapshot>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Snapshot snapshot) {
+                return snapshot.bytes;
+            }
+        };
+    }
+
+    /**
+     * @return the key for a query of the given location, route and date with the given
+     * projection and sort order.
+     */
+    static String buildKey(String locationSetting, int match, long date, String[] projection,
+                           String sortOrder) {
+        return locationSetting + '|' + match + '|' + date + '|' + Arrays.toString(projection)
+                + '|' + sortOrder;
+    }
+
+    /**
+     * @return the generation to pass to {@link #put}.  Call it before running the query.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @return a new cursor over the cached result for key, or null if there isn't one.
+     */
+    Cursor get(String key) {
+        Snapshot snapshot = mSnapshots.get(key);
+        return snapshot == null ? null : new SnapshotCursor(snapshot);
+    }
+
+    /**
+     * Copies the rows out of cursor, closes it, and caches them unless the cache was
+     * invalidated after generation was read.  If the cache was already invalidated, or the
+     * rows turn out to be too big to cache, cursor is returned as it is.
+     *
+     * @return a cursor over the same rows, to return in place of the one passed in.
+     */
+    Cursor put(String key, String locationSetting, long generation, Cursor cursor) {
+        synchronized (this) {
+            if (generation != mGeneration) {
+                return cursor;
+            }
+        }
+        int maxBytes = maxSize();
+        String[] columnNames = cursor.getColumnNames();
+        Object[][] rows = new Object[cursor.getCount()][];
+        // Array and object headers, roughly.
+        int bytes = 64 + key.length() * 2;
+        boolean uncopied = false;
+        try {
+            for (int i = 0; cursor.moveToNext(); i++) {
+                Object[] row = new Object[columnNames.length];
+                bytes += 16 + 4 * row.length;
+                for (int column = 0; column < row.length; column++) {
+                    switch (cursor.getType(column)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            row[column] = cursor.getLong(column);
+                            bytes += 16;
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            row[column] = cursor.getDouble(column);
+                            bytes += 16;
+                            break;
+                        case Cursor.FIELD_TYPE_STRING:
+                            String string = cursor.getString(column);
+                            row[column] = string;
+                            bytes += 40 + 2 * string.length();
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            byte[] blob = cursor.getBlob(column);
+                            row[column] = blob;
+                            bytes += 16 + blob.length;
+                            break;
+                        default:
+                            row[column] = null;
+                    }
+                }
+                if (bytes > maxBytes) {
+                    // It would never be stored, so the caller gets the rows where they are.
+                    cursor.moveToPosition(-1);
+                    uncopied = true;
+                    return cursor;
+                }
+                rows[i] = row;
+            }
+        } finally {
+            if (!uncopied) {
+                cursor.close();
+            }
+        }
+
+        Snapshot snapshot = new Snapshot(locationSetting, columnNames, rows, bytes);
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mSnapshots.put(key, snapshot);
+            }
+        }
+        return new SnapshotCursor(snapshot);
+    }
+
+    /**
+     * Drops every cached result for the given location.  Call it once the write that changed
+     * the location's rows has been committed.
+     */
+    synchronized void invalidate(String locationSetting) {
+        mGeneration++;
+        for (Map.Entry<String, Snapshot> entry : mSnapshots.snapshot().entrySet()) {
+            if (entry.getValue().locationSetting.equals(locationSetting)) {
+                mSnapshots.remove(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Drops everything, for writes that could have touched any location.
+     */
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mSnapshots.evictAll();
+    }
+
+    /**
+     * Frees the cache's memory.  Unlike {@link #invalidateAll} this doesn't mean anything
+     * changed, so queries already running may still store their results.
+     */
+    void evictAll() {
+        mSnapshots.evictAll();
+    }
+
+    void trimToSize(int maxBytes) {
+        mSnapshots.trimToSize(maxBytes);
+    }
+
+    int maxSize() {
+        return mSnapshots.maxSize();
+    }
+
+    int size() {
+        return mSnapshots.size();
+    }
+
+    /**
+     * @return the cache's counters, as returned by WeatherContract.METHOD_CACHE_STATS.
+     */
+    Bundle getStats() {
+        Bundle stats = new Bundle();
+        stats.putInt(WeatherContract.RESULT_CACHE_HITS, mSnapshots.hitCount());
+        stats.putInt(WeatherContract.RESULT_CACHE_MISSES, mSnapshots.missCount());
+        stats.putInt(WeatherContract.RESULT_CACHE_EVICTIONS, mSnapshots.evictionCount());
+        stats.putInt(WeatherContract.RESULT_CACHE_BYTES, mSnapshots.size());
+        return stats;
+    }
+
+    /**
+     * A read-only cursor over a snapshot's rows, without copying them.  Snapshots never
+     * change, so any number of these can share one.  Values convert between types the way
+     * {@link android.database.MatrixCursor}'s do.
+     */
+    private static final class SnapshotCursor extends AbstractCursor {
+        private final Snapshot mSnapshot;
+
+        SnapshotCursor(Snapshot snapshot) {
+            mSnapshot = snapshot;
+        }
+
+        @Override
+        public int getCount() {
+            return mSnapshot.rows.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mSnapshot.columnNames;
+        }
+
+        private Object get(int column) {
+            if (column < 0 || column >= mSnapshot.columnNames.length) {
+                throw new CursorIndexOutOfBoundsException("Requested column: " + column
+                        + ", # of columns: " + mSnapshot.columnNames.length);
+            }
+            if (mPos < 0 || mPos >= mSnapshot.rows.length) {
+                throw new CursorIndexOutOfBoundsException(mPos, mSnapshot.rows.length);
+            }
+            return mSnapshot.rows[mPos][column];
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = get(column);
+            return value == null ? null : value.toString();
+        }
+
+        @Override
+        public short getShort(int column) {
+            Object value = get(column);
+            if (value instanceof Number) {
+                return ((Number) value).shortValue();
+            }
+            return value == null ? 0 : Short.parseShort(value.toString());
+        }
+
+        @Override
+        public int getInt(int column) {
+            Object value = get(column);
+            if (value instanceof Number) {
+                return ((Number) value).intValue();
+            }
+            return value == null ? 0 : Integer.parseInt(value.toString());
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = get(column);
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            return value == null ? 0 : Long.parseLong(value.toString());
+        }
+
+        @Override
+        public float getFloat(int column) {
+            Object value = get(column);
+            if (value instanceof Number) {
+                return ((Number) value).floatValue();
+            }
+            return value == null ? 0.0f : Float.parseFloat(value.toString());
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = get(column);
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return value == null ? 0.0d : Double.parseDouble(value.toString());
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            return (byte[]) get(column);
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return Cursor.FIELD_TYPE_NULL;
+            } else if (value instanceof byte[]) {
+                return Cursor.FIELD_TYPE_BLOB;
+            } else if (value instanceof Double) {
+                return Cursor.FIELD_TYPE_FLOAT;
+            } else if (value instanceof Long) {
+                return Cursor.FIELD_TYPE_INTEGER;
+            }
+            return Cursor.FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return get(column) == null;
+        }
+    }
+}
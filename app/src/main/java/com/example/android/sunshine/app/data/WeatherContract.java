@@ -21,6 +21,8 @@ import android.net.Uri;
 import android.provider.BaseColumns;
 import android.text.format.Time;
 
+import java.util.TimeZone;
+
 /**
  * Defines table and column names for the weather database.
  */
@@ -43,10 +45,85 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_SYNC_LOG = "sync_log";
+
+    // Provider methods, called with ContentResolver.call() on BASE_CONTENT_URI.
+
+    // Stores the weather rows passed in EXTRA_VALUES, writing only the ones that are new or
+    // differ from what's already stored for their location and date.  The Bundle returned
+    // holds how many rows were inserted, updated and left unchanged, and the normalized date
+    // of the earliest row inserted or updated, if any was.
+    public static final String METHOD_UPSERT_WEATHER = "upsert_weather";
+    public static final String EXTRA_VALUES = "values";
+    public static final String RESULT_INSERTED = "inserted";
+    public static final String RESULT_UPDATED = "updated";
+    public static final String RESULT_UNCHANGED = "unchanged";
+    public static final String RESULT_FIRST_CHANGED_DATE = "first_changed_date";
+
+    // Commits everything one sync learned about a location in a single transaction: the
+    // location row in EXTRA_LOCATION, its weather rows in EXTRA_VALUES (upserted as above,
+    // without a location_id; the provider fills it in) and, if EXTRA_PURGE_BEFORE is given,
+    // the removal of the location's weather on or before that date.  Observers get at most
+    // one notification.  The Bundle returned holds the RESULT_* counts and the location id.
+    public static final String METHOD_COMMIT_FORECAST = "commit_forecast";
+    public static final String EXTRA_LOCATION = "location";
+    public static final String EXTRA_PURGE_BEFORE = "purge_before";
+    public static final String RESULT_PURGED = "purged";
+    public static final String RESULT_LOCATION_ID = "location_id";
+
+    // Checkpoints the database's write-ahead log without blocking readers.  The Bundle
+    // returned holds the number of frames in the log and how many were checkpointed.
+    public static final String METHOD_CHECKPOINT = "checkpoint";
+    public static final String RESULT_LOG_FRAMES = "log_frames";
+    public static final String RESULT_CHECKPOINTED_FRAMES = "checkpointed_frames";
+
+    // Rebuilds the database file to give back the space deleted rows left behind.  It holds
+    // up every other write while it runs, so it's only for maintenance.
+    public static final String METHOD_VACUUM = "vacuum";
+
+    // Reports how the forecast query cache is doing: its hits, misses and evictions since the
+    // process started, and the estimated bytes it holds now.
+    public static final String METHOD_CACHE_STATS = "cache_stats";
+    public static final String RESULT_CACHE_HITS = "cache_hits";
+    public static final String RESULT_CACHE_MISSES = "cache_misses";
+    public static final String RESULT_CACHE_EVICTIONS = "cache_evictions";
+    public static final String RESULT_CACHE_BYTES = "cache_bytes";
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    // Further than any time zone is from UTC.
+    private static final long MAX_OFFSET_MILLIS = 15 * 60 * 60 * 1000L;
+
+    // The default time zone, kept so normalizeDate() doesn't clone it on every call.  Dropped
+    // by onTimeZoneChanged().
+    private static volatile TimeZone sTimeZone;
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
     public static long normalizeDate(long startDate) {
+        TimeZone timeZone = sTimeZone;
+        if (timeZone == null) {
+            timeZone = TimeZone.getDefault();
+            sTimeZone = timeZone;
+        }
+
+        // The local date, and the start of its day on the local clock.
+        long localDate = startDate + timeZone.getOffset(startDate);
+        long localDayStart = localDate - localDate % DAY_IN_MILLIS;
+        if (localDate % DAY_IN_MILLIS < 0) {
+            localDayStart -= DAY_IN_MILLIS;
+        }
+
+        // The start of the day is somewhere within a time zone's offset of localDayStart.  If
+        // the offset is the same throughout, that's where.  Otherwise the clocks change around
+        // midnight, and Time works out what midnight means that day.
+        int offset = timeZone.getOffset(localDayStart - MAX_OFFSET_MILLIS);
+        if (offset != timeZone.getOffset(localDayStart + MAX_OFFSET_MILLIS)) {
+            return normalizeDateWithTime(startDate);
+        }
+        return localDayStart - offset;
+    }
+
+    private static long normalizeDateWithTime(long startDate) {
         // normalize the start date to the beginning of the (UTC) day
         Time time = new Time();
         time.set(startDate);
@@ -54,6 +131,13 @@ public class WeatherContract {
         return time.setJulianDay(julianDay);
     }
 
+    /**
+     * Makes normalizeDate() use the current default time zone, after it changes.
+     */
+    public static void onTimeZoneChanged() {
+        sTimeZone = null;
+    }
+
     /* Inner class that defines the table contents of the location table */
     public static final class LocationEntry implements BaseColumns {
 
@@ -81,6 +165,12 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // HTTP cache validators from the last forecast we stored for this location.  They're
+        // sent back on the next sync so the server can answer 304 Not Modified.  Either one
+        // may be null if the server didn't provide it.
+        public static final String COLUMN_ETAG = "etag";
+        public static final String COLUMN_LAST_MODIFIED = "last_modified";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -165,4 +255,34 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /* Inner class that defines the table contents of the sync log table.  Writes to it don't
+       send change notifications, so a sync that changed no weather stays silent. */
+    public static final class SyncLogEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_SYNC_LOG).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SYNC_LOG;
+
+        public static final String TABLE_NAME = "sync_log";
+
+        // The location setting string that was sent to openweathermap.  Not a foreign key,
+        // since failed lookups never get a row in the location table.
+        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+
+        // When the request was made, stored as long in milliseconds since the epoch
+        public static final String COLUMN_SYNC_TIME = "sync_time";
+
+        // HTTP status code of the response, e.g 200 or 304
+        public static final String COLUMN_HTTP_STATUS = "http_status";
+
+        // Content-Encoding of the response body, e.g "gzip".  Null if it wasn't compressed.
+        public static final String COLUMN_CONTENT_ENCODING = "content_encoding";
+
+        // Body bytes as they came over the network, and after decompression
+        public static final String COLUMN_BYTES_TRANSFERRED = "bytes_transferred";
+        public static final String COLUMN_BYTES_UNCOMPRESSED = "bytes_uncompressed";
+    }
 }
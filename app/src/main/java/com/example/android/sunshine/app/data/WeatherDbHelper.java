@@ -20,6 +20,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SyncLogEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
@@ -28,12 +29,55 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 5;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // The forecast queries look a location up by its setting and then want that location's
+    // days from some date on, in date order.  The UNIQUE (date, location_id) constraint's
+    // index has the columns the wrong way round for that, so give them an index of their own.
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date";
+    private static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX =
+            "CREATE INDEX " + INDEX_WEATHER_LOCATION_DATE + " ON " + WeatherEntry.TABLE_NAME +
+                    " (" + WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ");";
+
+    // The sync log is pruned by age on every sync.
+    static final String INDEX_SYNC_LOG_SYNC_TIME = "sync_log_sync_time";
+    private static final String SQL_CREATE_SYNC_LOG_SYNC_TIME_INDEX =
+            "CREATE INDEX " + INDEX_SYNC_LOG_SYNC_TIME + " ON " + SyncLogEntry.TABLE_NAME +
+                    " (" + SyncLogEntry.COLUMN_SYNC_TIME + ");";
+
+    // One row per forecast request, so we can see what each sync cost on the network.
+    private static final String SQL_CREATE_SYNC_LOG_TABLE =
+            "CREATE TABLE " + SyncLogEntry.TABLE_NAME + " (" +
+                    SyncLogEntry._ID + " INTEGER PRIMARY KEY," +
+                    SyncLogEntry.COLUMN_LOCATION_SETTING + " TEXT NOT NULL, " +
+                    SyncLogEntry.COLUMN_SYNC_TIME + " INTEGER NOT NULL, " +
+                    SyncLogEntry.COLUMN_HTTP_STATUS + " INTEGER NOT NULL, " +
+                    SyncLogEntry.COLUMN_CONTENT_ENCODING + " TEXT, " +
+                    SyncLogEntry.COLUMN_BYTES_TRANSFERRED + " INTEGER NOT NULL, " +
+                    SyncLogEntry.COLUMN_BYTES_UNCOMPRESSED + " INTEGER NOT NULL " +
+                    " );";
+
     public WeatherDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    // Lets the migration tests work on a database of their own.
+    WeatherDbHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        // With a write-ahead log, the loaders and widgets keep reading the last committed
+        // forecast while a sync is writing the next one, instead of waiting for it.  The
+        // framework sizes the pool of reader connections for WAL databases itself.
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // In WAL mode NORMAL can't corrupt the database; at worst a crash loses the last
+        // commits, and this is a cache the next sync refills.  It saves an fsync per commit.
+        db.execSQL("PRAGMA synchronous = NORMAL");
     }
 
     @Override
@@ -45,7 +89,9 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_ETAG + " TEXT, " +
+                LocationEntry.COLUMN_LAST_MODIFIED + " TEXT " +
                 " );";
 
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
@@ -81,18 +127,45 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_SYNC_LOG_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+        sqLiteDatabase.execSQL(SQL_CREATE_SYNC_LOG_SYNC_TIME_INDEX);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        //
+        // Each step brings the schema up one version and falls through to the next, so a
+        // database of any version since 2 keeps its locations and cached forecasts.  Dropping
+        // them would leave every upgraded user looking at an empty list until their next sync,
+        // and send all of those syncs to the server at once.  SQLiteOpenHelper runs all of this
+        // in one transaction, so a failed upgrade leaves the old database untouched.
+        //
+        // When you change the schema: update onCreate, increment DATABASE_VERSION and add a
+        // case for the previous version here.  TestDbMigrations checks that the two agree.
+        if (oldVersion < 2) {
+            // We don't have the schema of these any more, so start over.
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + SyncLogEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+
+        switch (oldVersion) {
+            case 2:
+                // HTTP cache validators for conditional forecast requests.
+                sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME +
+                        " ADD COLUMN " + LocationEntry.COLUMN_ETAG + " TEXT");
+                sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME +
+                        " ADD COLUMN " + LocationEntry.COLUMN_LAST_MODIFIED + " TEXT");
+            case 3:
+                sqLiteDatabase.execSQL(SQL_CREATE_SYNC_LOG_TABLE);
+            case 4:
+                sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+                sqLiteDatabase.execSQL(SQL_CREATE_SYNC_LOG_SYNC_TIME_INDEX);
+        }
     }
 }
@@ -16,26 +16,53 @@
 package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ComponentCallbacks2;
 import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private ForecastCache mForecastCache;
+
+    // Change notifications held back while this thread is applying a batch, so observers only
+    // hear about the batch once it has committed.
+    private final ThreadLocal<Set<Uri>> mPendingNotifications = new ThreadLocal<>();
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int SYNC_LOG = 400;
+
+    // A write touching more locations than this notifies the whole weather table once instead.
+    private static final int MAX_LOCATION_NOTIFICATIONS = 8;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    // The query builder and selections are package-private so TestQueryPlans can check the
+    // plans of the exact SQL the provider runs.
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -52,22 +79,32 @@ public class WeatherProvider extends ContentProvider {
     }
 
     //location.location_setting = ?
-    private static final String sLocationSettingSelection =
+    static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //weather.location_id = ? AND date = ?
+    static final String sLocationIdAndDaySelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    //weather.location_id = ? AND date <= ?
+    static final String sLocationIdAndPastDaySelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " <= ? ";
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
@@ -83,7 +120,15 @@ public class WeatherProvider extends ContentProvider {
             selection = sLocationSettingWithStartDateSelection;
         }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        String key = ForecastCache.buildKey(locationSetting, WEATHER_WITH_LOCATION, startDate,
+                projection, sortOrder);
+        Cursor cached = mForecastCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = mForecastCache.getGeneration();
+        Cursor cursor = sWeatherByLocationSettingQueryBuilder.query(
+                mOpenHelper.getReadableDatabase(),
                 projection,
                 selection,
                 selectionArgs,
@@ -91,6 +136,7 @@ public class WeatherProvider extends ContentProvider {
                 null,
                 sortOrder
         );
+        return mForecastCache.put(key, locationSetting, generation, cursor);
     }
 
     private Cursor getWeatherByLocationSettingAndDate(
@@ -98,7 +144,15 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        String key = ForecastCache.buildKey(locationSetting, WEATHER_WITH_LOCATION_AND_DATE, date,
+                projection, sortOrder);
+        Cursor cached = mForecastCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = mForecastCache.getGeneration();
+        Cursor cursor = sWeatherByLocationSettingQueryBuilder.query(
+                mOpenHelper.getReadableDatabase(),
                 projection,
                 sLocationSettingAndDaySelection,
                 new String[]{locationSetting, Long.toString(date)},
@@ -106,6 +160,7 @@ public class WeatherProvider extends ContentProvider {
                 null,
                 sortOrder
         );
+        return mForecastCache.put(key, locationSetting, generation, cursor);
     }
 
     /*
@@ -130,6 +185,7 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_SYNC_LOG, SYNC_LOG);
         return matcher;
     }
 
@@ -140,9 +196,39 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mForecastCache = new ForecastCache(ForecastCache.DEFAULT_MAX_BYTES);
+
+        // WeatherContract.normalizeDate() keeps the time zone; the provider lives as long as
+        // the process, so it tells it when the zone changes.
+        getContext().registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                WeatherContract.onTimeZoneChanged();
+            }
+        }, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
         return true;
     }
 
+    /*
+        The cached forecasts are only there to save queries, so give all the memory back once
+        the system is running low or the UI has gone, and half of it at the first warning.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mForecastCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            mForecastCache.trimToSize(mForecastCache.maxSize() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        mForecastCache.evictAll();
+    }
+
     /*
         Students: Here's where you'll code the getType function that uses the UriMatcher.  You can
         test this by uncommenting testGetType in TestProvider.
@@ -164,6 +250,8 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case SYNC_LOG:
+                return WeatherContract.SyncLogEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -213,6 +301,19 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "sync_log"
+            case SYNC_LOG: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.SyncLogEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -238,6 +339,16 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                String locationSetting = getLocationSetting(db,
+                        values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY));
+                if (locationSetting != null) {
+                    mForecastCache.invalidate(locationSetting);
+                    notifyChange(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                            locationSetting,
+                            values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE)));
+                } else {
+                    onWeatherChanged(null);
+                }
                 break;
             }
             case LOCATION: {
@@ -246,12 +357,24 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                mForecastCache.invalidate(values.getAsString(
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING));
+                notifyChange(uri);
+                break;
+            }
+            case SYNC_LOG: {
+                long _id = db.insert(WeatherContract.SyncLogEntry.TABLE_NAME, null, values);
+                if ( _id > 0 )
+                    returnUri = ContentUris.withAppendedId(uri, _id);
+                else
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+                // Nothing watches the log, and a sync that changed nothing else, like a 304,
+                // shouldn't wake the observers of the whole provider just to record itself.
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
         return returnUri;
     }
 
@@ -263,20 +386,39 @@ public class WeatherProvider extends ContentProvider {
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
-                break;
+            case WEATHER: {
+                Set<String> locationSettings;
+                db.beginTransactionNonExclusive();
+                try {
+                    locationSettings = getLocationSettings(db, selection, selectionArgs);
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (rowsDeleted != 0) {
+                    onWeatherChanged(locationSettings);
+                }
+                return rowsDeleted;
+            }
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0) {
+                    mForecastCache.invalidateAll();
+                }
                 break;
+            case SYNC_LOG:
+                // Not notified, like the inserts.
+                return db.delete(
+                        WeatherContract.SyncLogEntry.TABLE_NAME, selection, selectionArgs);
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
@@ -297,11 +439,26 @@ public class WeatherProvider extends ContentProvider {
         int rowsUpdated;
 
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
+                Set<String> locationSettings;
+                db.beginTransactionNonExclusive();
+                try {
+                    // Rows moved to another location change that one too, so tell everybody.
+                    locationSettings = values.containsKey(
+                            WeatherContract.WeatherEntry.COLUMN_LOC_KEY)
+                            ? null : getLocationSettings(db, selection, selectionArgs);
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (rowsUpdated != 0) {
+                    onWeatherChanged(locationSettings);
+                }
+                return rowsUpdated;
+            }
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
@@ -310,7 +467,8 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            mForecastCache.invalidateAll();
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -321,8 +479,9 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
+                db.beginTransactionNonExclusive();
                 int returnCount = 0;
+                Set<String> locationSettings;
                 try {
                     for (ContentValues value : values) {
                         normalizeDate(value);
@@ -331,17 +490,391 @@ public class WeatherProvider extends ContentProvider {
                             returnCount++;
                         }
                     }
+                    locationSettings = getLocationSettings(db, values);
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                onWeatherChanged(locationSettings);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_UPSERT_WEATHER.equals(method)) {
+            return upsertWeather(getValuesArray(extras));
+        } else if (WeatherContract.METHOD_COMMIT_FORECAST.equals(method)) {
+            return commitForecast(extras);
+        } else if (WeatherContract.METHOD_CHECKPOINT.equals(method)) {
+            return checkpoint();
+        } else if (WeatherContract.METHOD_VACUUM.equals(method)) {
+            mOpenHelper.getWritableDatabase().execSQL("VACUUM");
+            return new Bundle();
+        } else if (WeatherContract.METHOD_CACHE_STATS.equals(method)) {
+            return mForecastCache.getStats();
+        }
+        return super.call(method, arg, extras);
+    }
+
+    private static ContentValues[] getValuesArray(Bundle extras) {
+        Parcelable[] parcelables = extras.getParcelableArray(WeatherContract.EXTRA_VALUES);
+        ContentValues[] values = new ContentValues[parcelables.length];
+        for (int i = 0; i < parcelables.length; i++) {
+            values[i] = (ContentValues) parcelables[i];
+        }
+        return values;
+    }
+
+    /**
+     * Writes each weather row only if it's new or differs from the stored row for the same
+     * location and date.  Unlike an insert, which the ON CONFLICT REPLACE constraint turns into
+     * a delete and reinsert, an unchanged day costs one indexed lookup: no new row id, no
+     * index rewrites, and no change notification if nothing changed at all.
+     */
+    private Bundle upsertWeather(ContentValues[] values) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        Bundle result = new Bundle();
+        Set<String> locationSettings;
+
+        db.beginTransactionNonExclusive();
+        try {
+            writeWeather(db, values, result);
+            locationSettings = getLocationSettings(db, values);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (result.getInt(WeatherContract.RESULT_INSERTED)
+                + result.getInt(WeatherContract.RESULT_UPDATED) > 0) {
+            onWeatherChanged(locationSettings);
+        }
+        return result;
+    }
+
+    /**
+     * Does the work of {@link #upsertWeather} inside the caller's transaction, and puts the
+     * counts in result.
+     */
+    private void writeWeather(SQLiteDatabase db, ContentValues[] values, Bundle result) {
+        int inserted = 0;
+        int updated = 0;
+        int unchanged = 0;
+        long firstChangedDate = Long.MAX_VALUE;
+
+        for (ContentValues value : values) {
+            normalizeDate(value);
+            long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                    null,
+                    sLocationIdAndDaySelection,
+                    new String[]{
+                            value.getAsString(WeatherContract.WeatherEntry.COLUMN_LOC_KEY),
+                            value.getAsString(WeatherContract.WeatherEntry.COLUMN_DATE)},
+                    null,
+                    null,
+                    null);
+            try {
+                if (!cursor.moveToFirst()) {
+                    if (db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value) != -1) {
+                        inserted++;
+                        firstChangedDate = Math.min(firstChangedDate, date);
+                    }
+                } else if (!matchesCurrentRow(cursor, value)) {
+                    long _id = cursor.getLong(
+                            cursor.getColumnIndex(WeatherContract.WeatherEntry._ID));
+                    db.update(WeatherContract.WeatherEntry.TABLE_NAME, value,
+                            WeatherContract.WeatherEntry._ID + " = ?",
+                            new String[]{Long.toString(_id)});
+                    updated++;
+                    firstChangedDate = Math.min(firstChangedDate, date);
+                } else {
+                    unchanged++;
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        result.putInt(WeatherContract.RESULT_INSERTED, inserted);
+        result.putInt(WeatherContract.RESULT_UPDATED, updated);
+        result.putInt(WeatherContract.RESULT_UNCHANGED, unchanged);
+        if (firstChangedDate != Long.MAX_VALUE) {
+            result.putLong(WeatherContract.RESULT_FIRST_CHANGED_DATE, firstChangedDate);
+        }
+    }
+
+    /**
+     * Stores a location's forecast in one transaction, so there's a single journal commit and
+     * readers never see a half-written sync.  Observers of the location's weather are notified
+     * once if its weather or the location itself changed, and observers of other locations not
+     * at all.  New cache validators alone are stored but change nothing for readers.
+     */
+    private Bundle commitForecast(Bundle extras) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        ContentValues location = extras.getParcelable(WeatherContract.EXTRA_LOCATION);
+        ContentValues[] values = getValuesArray(extras);
+        Bundle result = new Bundle();
+        boolean locationChanged;
+        int purged = 0;
+
+        db.beginTransactionNonExclusive();
+        try {
+            long locationId;
+            Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                    null,
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                    new String[]{location.getAsString(
+                            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING)},
+                    null,
+                    null,
+                    null);
+            try {
+                if (!cursor.moveToFirst()) {
+                    locationId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, location);
+                    if (locationId == -1) {
+                        throw new android.database.SQLException("Failed to insert location "
+                                + location);
+                    }
+                    locationChanged = true;
+                } else {
+                    locationId = cursor.getLong(
+                            cursor.getColumnIndex(WeatherContract.LocationEntry._ID));
+                    // A new ETag or Last-Modified only says the server answered; the forecast
+                    // queries don't read them, so they're stored without counting as a change.
+                    ContentValues joined = new ContentValues(location);
+                    joined.remove(WeatherContract.LocationEntry.COLUMN_ETAG);
+                    joined.remove(WeatherContract.LocationEntry.COLUMN_LAST_MODIFIED);
+                    locationChanged = !matchesCurrentRow(cursor, joined);
+                    if (locationChanged || !matchesCurrentRow(cursor, location)) {
+                        db.update(WeatherContract.LocationEntry.TABLE_NAME, location,
+                                WeatherContract.LocationEntry._ID + " = ?",
+                                new String[]{Long.toString(locationId)});
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+
+            for (ContentValues value : values) {
+                value.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            }
+            writeWeather(db, values, result);
+
+            if (extras.containsKey(WeatherContract.EXTRA_PURGE_BEFORE)) {
+                purged = db.delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                        sLocationIdAndPastDaySelection,
+                        new String[]{Long.toString(locationId), Long.toString(
+                                extras.getLong(WeatherContract.EXTRA_PURGE_BEFORE))});
+            }
+            db.setTransactionSuccessful();
+            result.putLong(WeatherContract.RESULT_LOCATION_ID, locationId);
+        } finally {
+            db.endTransaction();
+        }
+        result.putInt(WeatherContract.RESULT_PURGED, purged);
+
+        String locationSetting =
+                location.getAsString(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+        boolean weatherChanged = result.getInt(WeatherContract.RESULT_INSERTED)
+                + result.getInt(WeatherContract.RESULT_UPDATED) + purged > 0;
+        // The forecast queries join in the location, so its changes are news to them too.
+        // Either way it's one notification per commit.
+        if (weatherChanged || locationChanged) {
+            mForecastCache.invalidate(locationSetting);
+            notifyChange(WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting));
+        }
+        return result;
+    }
+
+    /**
+     * Copies what the write-ahead log holds back into the database file, as far as it can
+     * without waiting on readers.  SQLite checkpoints on its own once the log reaches 1000
+     * pages, but a large sync is better folded in right away than left for the next writer.
+     */
+    private Bundle checkpoint() {
+        Bundle result = new Bundle();
+        Cursor cursor = mOpenHelper.getWritableDatabase().rawQuery(
+                "PRAGMA wal_checkpoint(PASSIVE)", null);
+        try {
+            if (cursor.moveToFirst()) {
+                // The columns are: busy, frames in the log, frames checkpointed.
+                result.putInt(WeatherContract.RESULT_LOG_FRAMES, cursor.getInt(1));
+                result.putInt(WeatherContract.RESULT_CHECKPOINTED_FRAMES, cursor.getInt(2));
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
+    /**
+     * @return the setting of the location with the given id, or null if there isn't one.
+     */
+    private static String getLocationSetting(SQLiteDatabase db, Long locationId) {
+        if (locationId == null) {
+            return null;
+        }
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the settings of the locations the weather rows in values belong to, or null if
+     * that can't be told.
+     */
+    private static Set<String> getLocationSettings(SQLiteDatabase db, ContentValues[] values) {
+        Set<Long> locationIds = new LinkedHashSet<>();
+        for (ContentValues value : values) {
+            Long locationId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+            if (locationId == null) {
+                return null;
+            }
+            locationIds.add(locationId);
+        }
+        Set<String> locationSettings = new LinkedHashSet<>();
+        for (Long locationId : locationIds) {
+            String locationSetting = getLocationSetting(db, locationId);
+            if (locationSetting == null) {
+                return null;
+            }
+            locationSettings.add(locationSetting);
+        }
+        return locationSettings;
+    }
+
+    /**
+     * @return the settings of the locations with weather rows matching the selection, or null
+     * if the selection is all of them.
+     */
+    private static Set<String> getLocationSettings(SQLiteDatabase db, String selection,
+                                                   String[] selectionArgs) {
+        if (TextUtils.isEmpty(selection) || "1".equals(selection)) {
+            return null;
+        }
+        Cursor cursor = db.query(true, WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                WeatherContract.LocationEntry._ID + " IN (SELECT "
+                        + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " FROM "
+                        + WeatherContract.WeatherEntry.TABLE_NAME + " WHERE " + selection + ")",
+                selectionArgs,
+                null,
+                null,
+                null,
+                null);
+        try {
+            Set<String> locationSettings = new LinkedHashSet<>();
+            while (cursor.moveToNext()) {
+                locationSettings.add(cursor.getString(0));
+            }
+            return locationSettings;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Drops the cached forecasts of the given locations and notifies the observers of their
+     * weather, or of all the weather if locationSettings is null or too long to be worth it.
+     * Call it after the change is committed.
+     */
+    private void onWeatherChanged(Set<String> locationSettings) {
+        if (locationSettings == null) {
+            mForecastCache.invalidateAll();
+            notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+            return;
+        }
+        for (String locationSetting : locationSettings) {
+            mForecastCache.invalidate(locationSetting);
+        }
+        if (locationSettings.size() > MAX_LOCATION_NOTIFICATIONS) {
+            notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+        } else {
+            for (String locationSetting : locationSettings) {
+                notifyChange(WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting));
+            }
+        }
+    }
+
+    /**
+     * @return true if every column in values holds the same value in the cursor's current row.
+     */
+    private static boolean matchesCurrentRow(Cursor cursor, ContentValues values) {
+        for (String key : values.keySet()) {
+            int index = cursor.getColumnIndex(key);
+            if (index == -1) {
+                return false;
+            }
+            Object value = values.get(key);
+            if (value == null) {
+                if (!cursor.isNull(index)) {
+                    return false;
+                }
+            } else if (cursor.isNull(index)) {
+                return false;
+            } else if (value instanceof Number) {
+                // Whole numbers may have been stored in a REAL column, so compare as doubles.
+                // Dates and ids are well within the range a double holds exactly.
+                if (cursor.getDouble(index) != ((Number) value).doubleValue()) {
+                    return false;
+                }
+            } else if (!value.toString().equals(cursor.getString(index))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies the operations in a single transaction: either all of them take effect or none
+     * do.  Each distinct URI the batch touched is notified once, after the commit.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        Set<Uri> notifications = new LinkedHashSet<>();
+        ContentProviderResult[] results;
+        mPendingNotifications.set(notifications);
+        db.beginTransactionNonExclusive();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mPendingNotifications.remove();
+            // The operations invalidated the cache as they went, but before the commit, so a
+            // query in between could have cached what was there before the batch.
+            mForecastCache.invalidateAll();
+        }
+        for (Uri uri : notifications) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        return results;
+    }
+
+    private void notifyChange(Uri uri) {
+        Set<Uri> pending = mPendingNotifications.get();
+        if (pending != null) {
+            pending.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
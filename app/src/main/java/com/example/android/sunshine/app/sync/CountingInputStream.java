@@ -0,0 +1,64 @@
+package com.example.android.sunshine.app.sync;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream that counts the bytes read through it.  Wrapped around the raw connection
+ * stream it measures what went over the network; wrapped around the decompressor it measures
+ * what the parser actually saw.
+ */
+class CountingInputStream extends FilterInputStream {
+    private long mCount;
+
+    CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    long getCount() {
+        return mCount;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            mCount++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        int read = super.read(buffer, offset, count);
+        if (read > 0) {
+            mCount += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long byteCount) throws IOException {
+        long skipped = super.skip(byteCount);
+        mCount += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // Resetting would make us count the same bytes twice.
+        return false;
+    }
+
+    /**
+     * Reads and discards whatever is left, so the counts cover the whole body even if the
+     * parser stopped at the end of the JSON.
+     */
+    void drain() throws IOException {
+        byte[] buffer = new byte[512];
+        while (read(buffer, 0, buffer.length) != -1) {
+            // keep reading
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.android.sunshine.app.sync;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import org.json.JSONException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser for the OpenWeatherMap daily forecast response.
+ * <p>
+ * The forecast is read token by token straight from the connection's input stream into
+ * {@link DayForecast} records, so no intermediate String or JSONObject tree is ever built.
+ * Errors are reported the same way the old DOM parser did: an empty stream surfaces as an
+ * {@link IOException}, anything that isn't a well-formed forecast as a {@link JSONException}.
+ */
+class ForecastParser {
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    /**
+     * One day of the forecast, exactly as the server sent it.
+     */
+    static final class DayForecast {
+        final double pressure;
+        final int humidity;
+        final double windSpeed;
+        final double windDirection;
+        final double high;
+        final double low;
+        final String description;
+        final int weatherId;
+
+        DayForecast(double pressure, int humidity, double windSpeed, double windDirection,
+                    double high, double low, String description, int weatherId) {
+            this.pressure = pressure;
+            this.humidity = humidity;
+            this.windSpeed = windSpeed;
+            this.windDirection = windDirection;
+            this.high = high;
+            this.low = low;
+            this.description = description;
+            this.weatherId = weatherId;
+        }
+    }
+
+    /**
+     * The parsed response.  When {@link #code} is anything other than
+     * {@link HttpURLConnection#HTTP_OK} the city and the day list are not meaningful.
+     */
+    static final class Forecast {
+        int code = HttpURLConnection.HTTP_OK;
+        String cityName;
+        double cityLatitude;
+        double cityLongitude;
+        final List<DayForecast> days = new ArrayList<>();
+    }
+
+    private ForecastParser() {
+    }
+
+    /**
+     * Parses the forecast in the given stream.  The stream is read as UTF-8 and is NOT closed.
+     *
+     * @throws IOException   if the stream is empty or can't be read.
+     * @throws JSONException if the stream doesn't contain a valid forecast.
+     */
+    static Forecast parse(InputStream inputStream) throws IOException, JSONException {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
+        boolean started = false;
+        try {
+            reader.peek();
+            started = true;
+            return readForecast(reader);
+        } catch (EOFException e) {
+            // An empty body means the server didn't give us anything, which isn't a parse
+            // error.  Running out of input halfway through the forecast is.
+            if (!started) {
+                throw e;
+            }
+            throw newJSONException(e);
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            throw newJSONException(e);
+        }
+    }
+
+    private static Forecast readForecast(JsonReader reader) throws IOException, JSONException {
+        Forecast forecast = new Forecast();
+        boolean hasList = false;
+        boolean hasCity = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                forecast.code = (int) reader.nextDouble();
+            } else if (OWM_CITY.equals(name)) {
+                readCity(reader, forecast);
+                hasCity = true;
+            } else if (OWM_LIST.equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    forecast.days.add(readDay(reader));
+                }
+                reader.endArray();
+                hasList = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // Error responses only carry a code and a message, so don't insist on the rest.
+        if (forecast.code == HttpURLConnection.HTTP_OK) {
+            if (!hasList) {
+                throw new JSONException("No value for " + OWM_LIST);
+            }
+            if (!hasCity) {
+                throw new JSONException("No value for " + OWM_CITY);
+            }
+        }
+        return forecast;
+    }
+
+    private static void readCity(JsonReader reader, Forecast forecast)
+            throws IOException, JSONException {
+        boolean hasCoord = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                forecast.cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                double lat = Double.NaN;
+                double lon = Double.NaN;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        lat = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        lon = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                forecast.cityLatitude = require(lat, OWM_LATITUDE);
+                forecast.cityLongitude = require(lon, OWM_LONGITUDE);
+                hasCoord = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (forecast.cityName == null) {
+            throw new JSONException("No value for " + OWM_CITY_NAME);
+        }
+        if (!hasCoord) {
+            throw new JSONException("No value for " + OWM_COORD);
+        }
+    }
+
+    private static DayForecast readDay(JsonReader reader) throws IOException, JSONException {
+        double pressure = Double.NaN;
+        double humidity = Double.NaN;
+        double windSpeed = Double.NaN;
+        double windDirection = Double.NaN;
+        double high = Double.NaN;
+        double low = Double.NaN;
+        String description = null;
+        double weatherId = Double.NaN;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                pressure = reader.nextDouble();
+            } else if (OWM_HUMIDITY.equals(name)) {
+                humidity = reader.nextDouble();
+            } else if (OWM_WINDSPEED.equals(name)) {
+                windSpeed = reader.nextDouble();
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                windDirection = reader.nextDouble();
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                // Temperatures are in a child object called "temp".  Try not to name variables
+                // "temp" when working with temperature.  It confuses everybody.
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String tempName = reader.nextName();
+                    if (OWM_MAX.equals(tempName)) {
+                        high = reader.nextDouble();
+                    } else if (OWM_MIN.equals(tempName)) {
+                        low = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Description is in a child array called "weather", which is 1 element long.
+                // That element also contains a weather code.
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String weatherName = reader.nextName();
+                        if (OWM_DESCRIPTION.equals(weatherName)) {
+                            description = reader.peek() == JsonToken.NULL
+                                    ? null : reader.nextString();
+                        } else if (OWM_WEATHER_ID.equals(weatherName)) {
+                            weatherId = reader.nextDouble();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (description == null) {
+            throw new JSONException("No value for " + OWM_DESCRIPTION);
+        }
+        return new DayForecast(
+                require(pressure, OWM_PRESSURE),
+                (int) require(humidity, OWM_HUMIDITY),
+                require(windSpeed, OWM_WINDSPEED),
+                require(windDirection, OWM_WIND_DIRECTION),
+                require(high, OWM_MAX),
+                require(low, OWM_MIN),
+                description,
+                (int) require(weatherId, OWM_WEATHER_ID));
+    }
+
+    private static double require(double value, String name) throws JSONException {
+        if (Double.isNaN(value)) {
+            throw new JSONException("No value for " + name);
+        }
+        return value;
+    }
+
+    private static JSONException newJSONException(Exception cause) {
+        JSONException e = new JSONException(cause.getMessage());
+        e.initCause(cause);
+        return e;
+    }
+}
@@ -0,0 +1,312 @@
+package com.example.android.sunshine.app.sync;
+
+import android.accounts.Account;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SyncResult;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs Sunshine's background work as JobScheduler jobs rather than as the sync adapter's
+ * periodic sync, when that's what's picked in settings.
+ * <p>
+ * JobScheduler knows about the network and the state of the device, so each kind of work
+ * asks only for what it needs:
+ * <ul>
+ * <li>The forecast refresh needs a network of any kind.  Like the periodic sync it replaces,
+ * it's periodic and survives a reboot, and JobScheduler runs it in the same windows as the
+ * rest of the device's deferrable work.</li>
+ * <li>The art for the forecast is prefetched after a refresh, on an unmetered network, so
+ * it's already cached when the list is opened.  If no unmetered network turns up within a
+ * day it's fetched anyway.</li>
+ * <li>The history maintenance purges days gone by from every location, ages out the sync
+ * log and vacuums the database, which holds up every write while it runs.  JobScheduler can
+ * only ask for charging and idle together, so there's a job for each, and whichever runs
+ * first does the day's maintenance.</li>
+ * </ul>
+ * Syncs the user asks for still go through the sync adapter right away.
+ */
+public class SunshineJobScheduler {
+    private static final String LOG_TAG = SunshineJobScheduler.class.getSimpleName();
+
+    static final int JOB_FORECAST_REFRESH = 1;
+    static final int JOB_ART_PREFETCH = 2;
+    static final int JOB_MAINTENANCE_CHARGING = 3;
+    static final int JOB_MAINTENANCE_IDLE = 4;
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    // How long the art prefetch waits for an unmetered network.
+    static final long ART_PREFETCH_DEADLINE_MILLIS = DAY_IN_MILLIS;
+    static final long MAINTENANCE_INTERVAL_MILLIS = DAY_IN_MILLIS;
+
+    /**
+     * Puts the periodic work on the scheduler picked in settings, and takes it off the other
+     * one.  Does nothing if it's already where it should be.  It may look up the sync
+     * account, so call it off the main thread.
+     */
+    public static void applySelectedScheduler(Context context) {
+        boolean scheduled = isScheduled(context, JOB_FORECAST_REFRESH);
+        if (Utility.useJobScheduler(context)) {
+            if (!scheduled) {
+                Account account = SunshineSyncAdapter.getSyncAccount(context);
+                if (account != null) {
+                    ContentResolver.removePeriodicSync(account,
+                            context.getString(R.string.content_authority), new Bundle());
+                }
+                scheduleJobs(context, SunshineSyncAdapter.getSyncInterval(context));
+                Log.d(LOG_TAG, "Periodic sync moved to JobScheduler");
+            }
+        } else if (scheduled) {
+            cancelJobs(context);
+            int syncInterval = SunshineSyncAdapter.getSyncInterval(context);
+            SunshineSyncAdapter.configurePeriodicSync(context, syncInterval, syncInterval / 3);
+            Log.d(LOG_TAG, "Periodic sync moved back to the sync adapter");
+        }
+    }
+
+    /**
+     * Schedules the forecast refresh and the history maintenance.
+     */
+    static void scheduleJobs(Context context, int syncInterval) {
+        scheduleForecastRefresh(context, syncInterval, syncInterval / 3);
+        for (JobInfo job : buildMaintenanceJobs(context)) {
+            schedule(context, job);
+        }
+    }
+
+    static void cancelJobs(Context context) {
+        JobScheduler jobScheduler = getJobScheduler(context);
+        jobScheduler.cancel(JOB_FORECAST_REFRESH);
+        jobScheduler.cancel(JOB_ART_PREFETCH);
+        jobScheduler.cancel(JOB_MAINTENANCE_CHARGING);
+        jobScheduler.cancel(JOB_MAINTENANCE_IDLE);
+    }
+
+    /**
+     * Schedules the forecast refresh, replacing it if it's already scheduled.
+     *
+     * @param syncInterval how often to refresh, in seconds
+     * @param flexTime     how early in the interval it may run, in seconds; honoured from
+     *                     Nougat on
+     */
+    public static void scheduleForecastRefresh(Context context, int syncInterval, int flexTime) {
+        schedule(context, buildForecastRefreshJob(context, syncInterval, flexTime));
+    }
+
+    /**
+     * Schedules the art prefetch, unless the art is drawn from resources or a prefetch is
+     * already waiting.
+     */
+    static void scheduleArtPrefetch(Context context) {
+        if (Utility.usingLocalGraphics(context) || isScheduled(context, JOB_ART_PREFETCH)) {
+            return;
+        }
+        schedule(context, buildArtPrefetchJob(context));
+    }
+
+    static JobInfo buildForecastRefreshJob(Context context, int syncInterval, int flexTime) {
+        JobInfo.Builder builder = new JobInfo.Builder(JOB_FORECAST_REFRESH, getService(context))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setPersisted(true)
+                .setBackoffCriteria(JobInfo.DEFAULT_INITIAL_BACKOFF_MILLIS,
+                        JobInfo.BACKOFF_POLICY_EXPONENTIAL);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            builder.setPeriodic(syncInterval * 1000L, flexTime * 1000L);
+        } else {
+            builder.setPeriodic(syncInterval * 1000L);
+        }
+        return builder.build();
+    }
+
+    static JobInfo buildArtPrefetchJob(Context context) {
+        return new JobInfo.Builder(JOB_ART_PREFETCH, getService(context))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setOverrideDeadline(ART_PREFETCH_DEADLINE_MILLIS)
+                .build();
+    }
+
+    static JobInfo[] buildMaintenanceJobs(Context context) {
+        ComponentName service = getService(context);
+        return new JobInfo[]{
+                new JobInfo.Builder(JOB_MAINTENANCE_CHARGING, service)
+                        .setRequiresCharging(true)
+                        .setPeriodic(MAINTENANCE_INTERVAL_MILLIS)
+                        .setPersisted(true)
+                        .build(),
+                new JobInfo.Builder(JOB_MAINTENANCE_IDLE, service)
+                        .setRequiresDeviceIdle(true)
+                        .setPeriodic(MAINTENANCE_INTERVAL_MILLIS)
+                        .setPersisted(true)
+                        .build()
+        };
+    }
+
+    /**
+     * Does the work of a job.  Called by {@link SunshineJobService} on a worker thread.
+     *
+     * @return true if the job should be tried again later.
+     */
+    static boolean runJob(Context context, int jobId) {
+        switch (jobId) {
+            case JOB_FORECAST_REFRESH:
+                return refreshForecast(context);
+            case JOB_ART_PREFETCH:
+                prefetchArt(context);
+                return false;
+            case JOB_MAINTENANCE_CHARGING:
+            case JOB_MAINTENANCE_IDLE:
+                maintainHistory(context);
+                return false;
+            default:
+                Log.w(LOG_TAG, "Unknown job " + jobId);
+                return false;
+        }
+    }
+
+    /*
+        Syncs the preferred location, as the periodic sync would have, and queues up its art.
+        The circuit breaker keeps a retry from going back to a server that's down too soon.
+     */
+    private static boolean refreshForecast(Context context) {
+        SyncResult syncResult = new SyncResult();
+        new SunshineSyncAdapter(context, false).onPerformSync(
+                SunshineSyncAdapter.getSyncAccount(context), new Bundle(),
+                context.getString(R.string.content_authority), null, syncResult);
+        Log.d(LOG_TAG, "Forecast refresh: " + syncResult);
+        // A breaker that refused the fetch only delays the sync; there's no new forecast to
+        // fetch art for, and the server is better left alone.
+        if (!syncResult.hasError() && syncResult.delayUntil == 0) {
+            scheduleArtPrefetch(context);
+        }
+        return syncResult.hasSoftError();
+    }
+
+    /*
+        Downloads the art for the days the list shows into Glide's disk cache.
+     */
+    private static void prefetchArt(Context context) {
+        Set<String> artUrls = new LinkedHashSet<>();
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        Utility.getPreferredLocation(context), System.currentTimeMillis()),
+                new String[]{WeatherContract.WeatherEntry.COLUMN_WEATHER_ID},
+                null,
+                null,
+                null);
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                String artUrl = Utility.getArtUrlForWeatherCondition(context, cursor.getInt(0));
+                if (artUrl != null) {
+                    artUrls.add(artUrl);
+                }
+            }
+            cursor.close();
+        }
+
+        int fetched = 0;
+        for (String artUrl : artUrls) {
+            try {
+                Glide.with(context)
+                        .load(artUrl)
+                        .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL)
+                        .get();
+                fetched++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "Error prefetching " + artUrl, e);
+            }
+        }
+        Log.d(LOG_TAG, "Prefetched " + fetched + " of " + artUrls.size() + " pieces of art");
+    }
+
+    /*
+        Clears out what the syncs leave behind: days gone by of locations that aren't synced
+        any more, and old sync log entries.  Then vacuums the database to give the space back.
+     */
+    static void maintainHistory(Context context) {
+        maintainHistory(context, SunshineSyncAdapter.getSchedulePrefs(context), null);
+    }
+
+    /*
+        Maintains the history unless it was done in the last half interval, going by the time
+        kept in prefs.  With a locationId, only that location's past days are purged, and the
+        sync log and the database file are left alone, so tests can run it on their own rows.
+
+        Returns whether it ran.
+     */
+    static boolean maintainHistory(Context context, SharedPreferences prefs, Long locationId) {
+        String lastMaintenanceKey = context.getString(R.string.pref_last_maintenance);
+        long now = System.currentTimeMillis();
+        if (now - prefs.getLong(lastMaintenanceKey, 0) < MAINTENANCE_INTERVAL_MILLIS / 2) {
+            // The other maintenance job got to it first.
+            return false;
+        }
+
+        ContentResolver resolver = context.getContentResolver();
+        long yesterday = WeatherContract.normalizeDate(now) - DAY_IN_MILLIS;
+        int purged;
+        int aged = 0;
+        if (locationId != null) {
+            purged = resolver.delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                            + WeatherContract.WeatherEntry.COLUMN_DATE + " < ?",
+                    new String[]{Long.toString(locationId), Long.toString(yesterday)});
+        } else {
+            purged = resolver.delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " < ?",
+                    new String[]{Long.toString(yesterday)});
+            aged = resolver.delete(WeatherContract.SyncLogEntry.CONTENT_URI,
+                    WeatherContract.SyncLogEntry.COLUMN_SYNC_TIME + " < ?",
+                    new String[]{Long.toString(now - SunshineSyncAdapter.SYNC_LOG_MAX_AGE)});
+            resolver.call(WeatherContract.BASE_CONTENT_URI, WeatherContract.METHOD_VACUUM,
+                    null, null);
+        }
+
+        prefs.edit().putLong(lastMaintenanceKey, now).apply();
+        Log.d(LOG_TAG, "History maintained: " + purged + " days and " + aged
+                + " sync log entries removed");
+        return true;
+    }
+
+    static boolean isScheduled(Context context, int jobId) {
+        for (JobInfo job : getJobScheduler(context).getAllPendingJobs()) {
+            if (job.getId() == jobId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void schedule(Context context, JobInfo job) {
+        if (getJobScheduler(context).schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(LOG_TAG, "Couldn't schedule job " + job.getId());
+        }
+    }
+
+    private static JobScheduler getJobScheduler(Context context) {
+        return (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    }
+
+    private static ComponentName getService(Context context) {
+        return new ComponentName(context, SunshineJobService.class);
+    }
+}
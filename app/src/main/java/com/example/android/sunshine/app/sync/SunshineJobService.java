@@ -0,0 +1,54 @@
+package com.example.android.sunshine.app.sync;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.AsyncTask;
+import android.util.SparseArray;
+
+/**
+ * Runs the jobs {@link SunshineJobScheduler} schedules.  JobScheduler calls in on the main
+ * thread, so each job's work is done on the AsyncTask thread pool.
+ */
+public class SunshineJobService extends JobService {
+
+    // The jobs running now, by id.  Only touched on the main thread.
+    private final SparseArray<JobTask> mRunningJobs = new SparseArray<>();
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        JobTask task = new JobTask(params);
+        mRunningJobs.put(params.getJobId(), task);
+        task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The job's constraints stopped holding.  Stop it and have it tried again.
+        JobTask task = mRunningJobs.get(params.getJobId());
+        if (task != null) {
+            mRunningJobs.remove(params.getJobId());
+            task.cancel(true);
+        }
+        return true;
+    }
+
+    private class JobTask extends AsyncTask<Void, Void, Boolean> {
+        private final JobParameters mParams;
+
+        JobTask(JobParameters params) {
+            mParams = params;
+        }
+
+        @Override
+        protected Boolean doInBackground(Void... params) {
+            return SunshineJobScheduler.runJob(getApplicationContext(), mParams.getJobId());
+        }
+
+        @Override
+        protected void onPostExecute(Boolean needsReschedule) {
+            mRunningJobs.remove(mParams.getJobId());
+            jobFinished(mParams, needsReschedule);
+        }
+    }
+}
@@ -8,7 +8,6 @@ import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
@@ -20,47 +19,68 @@ import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
-import android.text.TextUtils;
 import android.text.format.Time;
 import android.util.Log;
 
 import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.ForecastSnapshot;
+import com.example.android.sunshine.app.LocationStatusStore;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Vector;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     // Interval at which to sync with the weather, in seconds.
     public static final int SYNC_INTERVAL = 60 * 60 * 3;  // 3 hours
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL / 3;
+    // Bounds on the interval as SyncIntervalPolicy adapts it to how often the forecast changes.
+    public static final int MIN_SYNC_INTERVAL = 60 * 60;  // 1 hour
+    public static final int MAX_SYNC_INTERVAL = 60 * 60 * 12;  // 12 hours
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
 
+    // Sync extras.  Without either of them only the preferred location is synced.
+    // Set to true to sync every location stored in the database.
+    public static final String SYNC_EXTRAS_ALL_LOCATIONS = "all_locations";
+    // A String[] of location settings to sync.
+    public static final String SYNC_EXTRAS_LOCATIONS = "locations";
+
+    // How many locations are fetched at once.  The work is mostly waiting on the network, but
+    // every worker ends up queueing for the single database writer, so a few is plenty.
+    static final int SYNC_THREAD_COUNT = 4;
+
     private static final String[] NOTIFY_WEATHER_PROJECTION = new String[]{
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
@@ -69,8 +89,20 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     };
 
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    // How long entries are kept in the sync log.
+    static final long SYNC_LOG_MAX_AGE = 7 * DAY_IN_MILLIS;
+    // Where the adaptive sync interval and the maintenance time are kept.  They change with
+    // every sync, so they stay out of the settings, whose listeners run on the main thread.
+    static final String SCHEDULE_PREFS_NAME = "sync_schedule";
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
+    // The sync account, once it's known to exist.  Kept for the life of the process, so
+    // settings changes don't go back to the account service for it.
+    private static volatile Account sSyncAccount;
+
+    private static final SyncIntervalPolicy sIntervalPolicy =
+            new SyncIntervalPolicy(MIN_SYNC_INTERVAL, SYNC_INTERVAL, MAX_SYNC_INTERVAL);
+
     // these indices must match the projection
     private static final int INDEX_WEATHER_ID = 0;
     private static final int INDEX_MAX_TEMP = 1;
@@ -185,10 +217,15 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
     /**
-     * Helper method to schedule the sync adapter periodic execution
+     * Helper method to schedule the sync adapter periodic execution, or the forecast refresh
+     * job if JobScheduler is picked in settings.
      */
 
     public static void configurePeriodicSync(Context context, int syncInterval, int flexTime) {
+        if (Utility.useJobScheduler(context)) {
+            SunshineJobScheduler.scheduleForecastRefresh(context, syncInterval, flexTime);
+            return;
+        }
         Account account = getSyncAccount(context);
         String authority = context.getString(R.string.content_authority);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
@@ -222,27 +259,181 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         syncImmediately(context);
     }
 
+    /**
+     * Makes sure the sync account exists, creating it and scheduling syncs the first time,
+     * and that the periodic sync is on the scheduler picked in settings.  Looking the account
+     * up takes a few calls to the account service, so it's done in the background and this
+     * returns right away.
+     */
     public static void initializeSyncAdapter(Context context) {
-        getSyncAccount(context);
+        if (sSyncAccount != null) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                Trace.beginSection("getSyncAccount");
+                try {
+                    long start = BuildConfig.DEBUG ? SystemClock.elapsedRealtime() : 0;
+                    getSyncAccount(appContext);
+                    if (BuildConfig.DEBUG) {
+                        Log.d(SunshineSyncAdapter.class.getSimpleName(), "Sync account ready in "
+                                + (SystemClock.elapsedRealtime() - start)
+                                + " ms, off the main thread");
+                    }
+                } finally {
+                    Trace.endSection();
+                }
+                SunshineJobScheduler.applySelectedScheduler(appContext);
+            }
+        });
     }
 
+    // Base URL of the OpenWeatherMap forecast API.  Tests point this at a local server.
+    static String sForecastBaseUrl = "http://api.openweathermap.org/data/2.5/forecast/daily?";
+
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "onPerformSync Called.");
-        String locationQuery = Utility.getPreferredLocation(getContext());
+        Set<String> locations = new LinkedHashSet<>();
+        String[] requestedLocations = extras.getStringArray(SYNC_EXTRAS_LOCATIONS);
+        if (requestedLocations != null) {
+            locations.addAll(Arrays.asList(requestedLocations));
+        } else {
+            locations.add(Utility.getPreferredLocation(getContext()));
+            if (extras.getBoolean(SYNC_EXTRAS_ALL_LOCATIONS, false)) {
+                locations.addAll(getStoredLocationSettings());
+            }
+        }
 
         // If there's no zip code, there's nothing to look up.  Verify size of params.
-        if (TextUtils.isEmpty(locationQuery)) {
+        locations.remove("");
+        locations.remove(null);
+        if (locations.isEmpty()) {
+            return;
+        }
+
+        if (locations.size() == 1) {
+            syncLocation(locations.iterator().next(), syncResult);
+        } else {
+            syncLocations(locations, syncResult);
+        }
+        pruneLocationStatuses(locations);
+        checkpoint();
+    }
+
+    /*
+        Drops the sync statuses of locations that are no longer stored.  The preferred location
+        and the ones just synced keep theirs, since a location the server didn't know never
+        gets a row.
+     */
+    private void pruneLocationStatuses(Collection<String> synced) {
+        Set<String> locations = getStoredLocationSettings();
+        locations.add(Utility.getPreferredLocation(getContext()));
+        locations.addAll(synced);
+        LocationStatusStore.getInstance(getContext()).retainOnly(locations);
+    }
+
+    /**
+     * Folds what this sync wrote to the database's write-ahead log back into the database,
+     * so the log doesn't keep growing and the next reads don't have to search it.
+     */
+    private void checkpoint() {
+        Bundle result = getContext().getContentResolver().call(
+                WeatherContract.BASE_CONTENT_URI, WeatherContract.METHOD_CHECKPOINT, null, null);
+        Log.d(LOG_TAG, "Checkpointed " + result.getInt(WeatherContract.RESULT_CHECKPOINTED_FRAMES)
+                + " of " + result.getInt(WeatherContract.RESULT_LOG_FRAMES) + " WAL frames");
+    }
+
+    /**
+     * Syncs several locations on a small pool of worker threads.  Each location is fetched,
+     * parsed and committed independently, so one slow or failing location doesn't hold up or
+     * spoil the others.  Returns when all of them are done, or when the sync is cancelled.
+     */
+    void syncLocations(Collection<String> locations, final SyncResult syncResult) {
+        long startTime = SystemClock.elapsedRealtime();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(SYNC_THREAD_COUNT, locations.size()));
+        for (final String location : locations) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!Thread.currentThread().isInterrupted()) {
+                        syncLocation(location, syncResult);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                Log.d(LOG_TAG, "Still syncing " + locations.size() + " locations");
+            }
+        } catch (InterruptedException e) {
+            // The sync was cancelled; stop handing out work and let the running fetches fail.
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        Log.d(LOG_TAG, "Synced " + locations.size() + " locations in "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms");
+    }
+
+    /**
+     * @return the location setting of every location stored in the database.
+     */
+    private Set<String> getStoredLocationSettings() {
+        Set<String> locationSettings = new LinkedHashSet<>();
+        Cursor locationCursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null,
+                null,
+                null);
+        if (locationCursor != null) {
+            while (locationCursor.moveToNext()) {
+                locationSettings.add(locationCursor.getString(0));
+            }
+            locationCursor.close();
+        }
+        return locationSettings;
+    }
+
+    /**
+     * Fetches the forecast for one location and stores it in the database.
+     * <p>
+     * If we've stored a forecast for this location before, the request is made conditional
+     * on the validators the server gave us then.  A 304 Not Modified means our copy is still
+     * current, so there's nothing to parse, write, or notify anyone about.
+     * <p>
+     * The body is requested compressed, and every response is recorded in the sync log with
+     * the number of bytes that went over the network and how many that decompressed to.
+     *
+     * <p>
+     * A server that keeps failing is left alone for a while; see {@link SyncCircuitBreaker}.
+     * What happened is added to syncResult, which may be shared with other fetches.
+     *
+     * @param locationQuery The location string used to request updates from the server.
+     */
+    void syncLocation(String locationQuery, SyncResult syncResult) {
+        String endpoint = getEndpoint();
+        SyncCircuitBreaker breaker = SyncCircuitBreaker.getInstance(getContext());
+        if (!breaker.allowRequest(endpoint)) {
+            Log.d(LOG_TAG, "Not fetching " + locationQuery + ", " + endpoint + " is failing");
+            delaySync(syncResult, breaker.getRetryAt(endpoint));
             return;
         }
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
+        // This needs to be declared outside the try/catch
+        // so that it can be closed in the finally block.
         HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+        // Filled in as far as we get, for the sync log.
+        long syncTime = System.currentTimeMillis();
+        int responseCode = -1;
+        String contentEncoding = null;
+        CountingInputStream wireStream = null;
+        CountingInputStream bodyStream = null;
 
         String format = "json";
         String units = "metric";
@@ -252,15 +443,13 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             // Construct the URL for the OpenWeatherMap query
             // Possible parameters are avaiable at OWM's forecast API page, at
             // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
             final String QUERY_PARAM = "q";
             final String FORMAT_PARAM = "mode";
             final String UNITS_PARAM = "units";
             final String DAYS_PARAM = "cnt";
             final String APPID_PARAM = "APPID";
 
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+            Uri builtUri = Uri.parse(sForecastBaseUrl).buildUpon()
                     .appendQueryParameter(QUERY_PARAM, locationQuery)
                     .appendQueryParameter(FORMAT_PARAM, format)
                     .appendQueryParameter(UNITS_PARAM, units)
@@ -272,239 +461,347 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
             // Create the request to OpenWeatherMap, and open the connection
             urlConnection = (HttpURLConnection) url.openConnection();
+            SyncRequestCoalescer.getInstance().onFetchStarted(locationQuery, urlConnection);
             urlConnection.setRequestMethod("GET");
+            // Asking for an encoding ourselves turns off HttpURLConnection's transparent gzip,
+            // which is what lets us see the compressed size.
+            urlConnection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+
+            String[] validators = getLocationValidators(locationQuery);
+            if (validators[0] != null) {
+                urlConnection.setRequestProperty("If-None-Match", validators[0]);
+            }
+            if (validators[1] != null) {
+                urlConnection.setRequestProperty("If-Modified-Since", validators[1]);
+            }
             urlConnection.connect();
 
-            // Read the input stream into a String
+            responseCode = urlConnection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // What we have is what the server would send us, so we're done.
+                Log.d(LOG_TAG, "Forecast for " + locationQuery + " not modified");
+                breaker.recordSuccess(endpoint);
+                onLocationSynced(locationQuery, false);
+                if (locationQuery.equals(Utility.getPreferredLocation(getContext()))) {
+                    adjustSyncInterval(0, 0, false);
+                }
+                return;
+            }
+
+            // Parse the forecast as it comes off the wire.  An empty stream shows up as an
+            // IOException, so it's reported as the server being down just like before.
             InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
             if (inputStream == null) {
                 // Nothing to do.
                 return;
             }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
-            }
-
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                Utility.setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+            wireStream = new CountingInputStream(inputStream);
+            contentEncoding = urlConnection.getContentEncoding();
+            bodyStream = new CountingInputStream(decode(wireStream, contentEncoding));
+            ForecastParser.Forecast forecast = ForecastParser.parse(bodyStream);
+            bodyStream.drain();
+            getWeatherDataFromForecast(forecast, locationQuery,
+                    urlConnection.getHeaderField("ETag"),
+                    urlConnection.getHeaderField("Last-Modified"), syncResult);
+        } catch (IOException e) {
+            if (urlConnection != null
+                    && SyncRequestCoalescer.getInstance().isCancelled(urlConnection)) {
+                // Another location was asked for while this one downloaded.  The server's fine.
+                Log.d(LOG_TAG, "Fetch of " + locationQuery + " cancelled");
                 return;
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
+            onEndpointFailed(e.toString(), syncResult);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
-            Utility.setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+            Utility.setLocationStatus(getContext(), locationQuery, LOCATION_STATUS_SERVER_DOWN);
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
-            Utility.setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            synchronized (syncResult) {
+                syncResult.stats.numParseExceptions++;
+            }
+            Utility.setLocationStatus(getContext(), locationQuery, LOCATION_STATUS_SERVER_INVALID);
         } finally {
             if (urlConnection != null) {
+                SyncRequestCoalescer.getInstance().onFetchFinished(urlConnection);
+                // Closes the input stream as well.
                 urlConnection.disconnect();
             }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
+            if (responseCode != -1) {
+                logSync(locationQuery, syncTime, responseCode, contentEncoding,
+                        wireStream == null ? 0 : wireStream.getCount(),
+                        bodyStream == null ? 0 : bodyStream.getCount());
             }
         }
         return;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     * <p>
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * Fetches the forecast for one location, outside of a framework sync.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-        final String OWM_MESSAGE_CODE = "cod";
-
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-            if (forecastJson.has(OWM_MESSAGE_CODE)) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        Utility.setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
-                        return;
-                    default:
-                        Utility.setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
-            }
-
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
+    void syncLocation(String locationQuery) {
+        syncLocation(locationQuery, new SyncResult());
+    }
 
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
+    /**
+     * @return the forecast server, as the circuit breaker knows it.
+     */
+    public static String getEndpoint() {
+        return Uri.parse(sForecastBaseUrl).getEncodedAuthority();
+    }
 
-            Time dayTime = new Time();
-            dayTime.setToNow();
+    /*
+        Counts a failure of the forecast server against it, and has the sync framework hold
+        off until the breaker's retry time.
+     */
+    private void onEndpointFailed(String error, SyncResult syncResult) {
+        long retryAt = SyncCircuitBreaker.getInstance(getContext())
+                .recordFailure(getEndpoint(), error);
+        synchronized (syncResult) {
+            syncResult.stats.numIoExceptions++;
+        }
+        delaySync(syncResult, retryAt);
+    }
 
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+    /*
+        Has the sync framework hold off this account's syncs until retryAt, in milliseconds
+        since the epoch.
+     */
+    private static void delaySync(SyncResult syncResult, long retryAt) {
+        synchronized (syncResult) {
+            syncResult.delayUntil = Math.max(syncResult.delayUntil, retryAt / 1000);
+        }
+    }
 
-            // now we work exclusively in UTC
-            dayTime = new Time();
+    /**
+     * Wraps the response body in a streaming decompressor matching its Content-Encoding.
+     */
+    static InputStream decode(InputStream inputStream, String contentEncoding) throws IOException {
+        if ("gzip".equalsIgnoreCase(contentEncoding)) {
+            return new GZIPInputStream(inputStream);
+        } else if ("deflate".equalsIgnoreCase(contentEncoding)) {
+            return new InflaterInputStream(inputStream);
+        }
+        return inputStream;
+    }
 
-            for (int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
+    /**
+     * Records one forecast request in the sync log, and drops entries that have aged out.
+     */
+    private void logSync(String locationSetting, long syncTime, int httpStatus,
+                         String contentEncoding, long bytesTransferred, long bytesUncompressed) {
+        ContentValues logValues = new ContentValues();
+        logValues.put(WeatherContract.SyncLogEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        logValues.put(WeatherContract.SyncLogEntry.COLUMN_SYNC_TIME, syncTime);
+        logValues.put(WeatherContract.SyncLogEntry.COLUMN_HTTP_STATUS, httpStatus);
+        logValues.put(WeatherContract.SyncLogEntry.COLUMN_CONTENT_ENCODING, contentEncoding);
+        logValues.put(WeatherContract.SyncLogEntry.COLUMN_BYTES_TRANSFERRED, bytesTransferred);
+        logValues.put(WeatherContract.SyncLogEntry.COLUMN_BYTES_UNCOMPRESSED, bytesUncompressed);
+
+        ContentResolver resolver = getContext().getContentResolver();
+        resolver.insert(WeatherContract.SyncLogEntry.CONTENT_URI, logValues);
+        resolver.delete(WeatherContract.SyncLogEntry.CONTENT_URI,
+                WeatherContract.SyncLogEntry.COLUMN_SYNC_TIME + " < ?",
+                new String[]{Long.toString(syncTime - SYNC_LOG_MAX_AGE)});
+
+        Log.d(LOG_TAG, "Sync of " + locationSetting + ": HTTP " + httpStatus + ", "
+                + bytesTransferred + " bytes transferred, " + bytesUncompressed + " uncompressed");
+    }
 
-                double high;
-                double low;
+    /**
+     * Take the forecast parsed from the server's response and store it in the database.
+     * <p>
+     * The parser has already turned the JSON into typed records, so all that's left is to
+     * check the response code, turn the location and each day into ContentValues and hand
+     * them to the provider to commit together.
+     *
+     * @param etag         The ETag header of the response, or null.
+     * @param lastModified The Last-Modified header of the response, or null.
+     * @param syncResult   Where the rows written are counted.
+     */
+    private void getWeatherDataFromForecast(ForecastParser.Forecast forecast,
+                                            String locationSetting,
+                                            String etag,
+                                            String lastModified,
+                                            SyncResult syncResult) {
+        switch (forecast.code) {
+            case HttpURLConnection.HTTP_OK:
+                SyncCircuitBreaker.getInstance(getContext()).recordSuccess(getEndpoint());
+                break;
+            case HttpURLConnection.HTTP_NOT_FOUND:
+                // The server is fine, it just doesn't know the location.
+                SyncCircuitBreaker.getInstance(getContext()).recordSuccess(getEndpoint());
+                Utility.setLocationStatus(getContext(), locationSetting,
+                        LOCATION_STATUS_SERVER_INVALID);
+                return;
+            default:
+                onEndpointFailed("cod " + forecast.code, syncResult);
+                Utility.setLocationStatus(getContext(), locationSetting,
+                        LOCATION_STATUS_SERVER_DOWN);
+                return;
+        }
 
-                String description;
-                int weatherId;
+        // Insert the new weather information into the database
+        ContentValues[] cvArray = new ContentValues[forecast.days.size()];
 
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
 
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay + i);
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
 
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+        Time dayTime = new Time();
+        dayTime.setToNow();
 
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+        // we start at the day returned by local time. Otherwise this is a mess.
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
 
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
+        // now we work exclusively in UTC
+        dayTime = new Time();
 
-                ContentValues weatherValues = new ContentValues();
+        for (int i = 0; i < cvArray.length; i++) {
+            ForecastParser.DayForecast day = forecast.days.get(i);
 
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+            // Cheating to convert this to UTC time, which is what we want anyhow
+            long dateTime = dayTime.setJulianDay(julianStartDay + i);
 
-                cVVector.add(weatherValues);
-            }
+            ContentValues weatherValues = new ContentValues();
 
-            int inserted = 0;
-            // add to database
-            if (cVVector.size() > 0) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                inserted = getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, day.humidity);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, day.pressure);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, day.windSpeed);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, day.windDirection);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, day.high);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, day.low);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, day.description);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, day.weatherId);
 
-                Calendar calendar = Calendar.getInstance();
-                calendar.setTimeInMillis(System.currentTimeMillis());
-                calendar.set(Calendar.HOUR, 0);
-                calendar.set(Calendar.MINUTE, 0);
-                calendar.set(Calendar.SECOND, 0);
-                calendar.add(Calendar.DAY_OF_YEAR, -1);
+            cvArray[i] = weatherValues;
+        }
 
-                long yesterday = WeatherContract.normalizeDate(calendar.getTimeInMillis());
+        // add to database
+        // The location, the days that changed and the purge of past days are committed in
+        // one transaction, and the provider sends at most one change notification for it all.
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, forecast.cityName);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, forecast.cityLatitude);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, forecast.cityLongitude);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_ETAG, etag);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LAST_MODIFIED, lastModified);
+
+        Bundle extras = new Bundle();
+        extras.putParcelable(WeatherContract.EXTRA_LOCATION, locationValues);
+        extras.putParcelableArray(WeatherContract.EXTRA_VALUES, cvArray);
+        if (cvArray.length > 0) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(System.currentTimeMillis());
+            calendar.set(Calendar.HOUR, 0);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.add(Calendar.DAY_OF_YEAR, -1);
+
+            long yesterday = WeatherContract.normalizeDate(calendar.getTimeInMillis());
+            extras.putLong(WeatherContract.EXTRA_PURGE_BEFORE, yesterday);
+        }
 
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[]{Long.toString(yesterday)});
+        // add to database
+        Bundle result = getContext().getContentResolver().call(
+                WeatherContract.BASE_CONTENT_URI, WeatherContract.METHOD_COMMIT_FORECAST,
+                null, extras);
+        int inserted = result.getInt(WeatherContract.RESULT_INSERTED);
+        int updated = result.getInt(WeatherContract.RESULT_UPDATED);
+        int unchanged = result.getInt(WeatherContract.RESULT_UNCHANGED);
+        int purged = result.getInt(WeatherContract.RESULT_PURGED);
+        synchronized (syncResult) {
+            syncResult.stats.numEntries += cvArray.length;
+            syncResult.stats.numInserts += inserted;
+            syncResult.stats.numUpdates += updated;
+            syncResult.stats.numDeletes += purged;
+        }
 
+        if (cvArray.length > 0) {
+            // The notification and the widgets only ever show the preferred location, and
+            // there's nothing new to show them if the forecast didn't change.
+            boolean changed = inserted + updated + purged > 0;
+            boolean preferred = locationSetting.equals(Utility.getPreferredLocation(getContext()));
+            if (changed && preferred) {
                 if (Utility.isNotify(getContext())) {
                     notifyWeather();
                 }
-                Utility.setLocationStatus(getContext(), LOCATION_STATUS_OK);
                 updateWidgets();
             }
+            onLocationSynced(locationSetting, changed);
+            if (preferred) {
+                // The periodic sync only fetches the preferred location, so it sets the pace.
+                long today = WeatherContract.normalizeDate(
+                        cvArray[0].getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+                adjustSyncInterval(inserted + updated, cvArray.length,
+                        result.getLong(WeatherContract.RESULT_FIRST_CHANGED_DATE, -1) == today);
+            }
+        }
 
-            Log.d(LOG_TAG, "FetchWeatherTask Complete. " + inserted + " Inserted");
+        Log.d(LOG_TAG, "FetchWeatherTask Complete. " + inserted + " Inserted, " + updated
+                + " Updated, " + unchanged + " Unchanged, " + purged + " Purged");
+    }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            Utility.setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+    /*
+        Marks the location as synced and, if it's the preferred one, saves the forecast the
+        list will show, so the next cold start can draw it before the database is read.  If
+        nothing changed, the snapshot is only saved again once its "Today" and "Tomorrow" have
+        moved on, or the units, art pack or locale it was formatted with changed.
+     */
+    private void onLocationSynced(String locationSetting, boolean changed) {
+        Utility.setLocationStatus(getContext(), locationSetting, LOCATION_STATUS_OK);
+        if (locationSetting.equals(Utility.getPreferredLocation(getContext()))) {
+            ForecastSnapshot.update(getContext(), locationSetting, changed);
         }
     }
 
+    /**
+     * Works out the next periodic sync interval from what this sync changed, and reschedules
+     * the periodic sync if it moved.
+     */
+    private void adjustSyncInterval(int daysChanged, int daysSynced, boolean todayChanged) {
+        Context context = getContext();
+        SharedPreferences prefs = getSchedulePrefs(context);
+        String intervalKey = context.getString(R.string.pref_sync_interval);
+        String stableCountKey = context.getString(R.string.pref_sync_stable_count);
+
+        SyncIntervalPolicy.State state = new SyncIntervalPolicy.State(
+                getSyncInterval(context), prefs.getInt(stableCountKey, 0));
+        SyncIntervalPolicy.State next =
+                sIntervalPolicy.next(state, daysChanged, daysSynced, todayChanged);
+        if (next.interval != state.interval || next.stableSyncs != state.stableSyncs) {
+            prefs.edit()
+                    .putInt(intervalKey, next.interval)
+                    .putInt(stableCountKey, next.stableSyncs)
+                    .apply();
+        }
+
+        if (next.interval != state.interval) {
+            Log.d(LOG_TAG, "Sync interval " + state.interval / 60 + " -> " + next.interval / 60
+                    + " minutes; " + daysChanged + " of " + daysSynced + " days changed");
+            configurePeriodicSync(context, next.interval, next.interval / 3);
+        }
+    }
+
+    /**
+     * @return the periodic sync interval the last syncs settled on, in seconds.
+     */
+    static int getSyncInterval(Context context) {
+        return getSchedulePrefs(context)
+                .getInt(context.getString(R.string.pref_sync_interval), SYNC_INTERVAL);
+    }
+
+    static SharedPreferences getSchedulePrefs(Context context) {
+        return context.getSharedPreferences(SCHEDULE_PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
     private void updateWidgets() {
         Context context = getContext();
         // Setting the package ensures that only components in our app will receive the broadcast
@@ -514,53 +811,29 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
     /**
-     * Helper method to handle insertion of a new location in the weather database.
+     * Helper method to read the HTTP cache validators stored with a location.
      *
      * @param locationSetting The location string used to request updates from the server.
-     * @param cityName        A human-readable city name, e.g "Mountain View"
-     * @param lat             the latitude of the city
-     * @param lon             the longitude of the city
-     * @return the row ID of the added location.
+     * @return the ETag and Last-Modified values, in that order.  Either may be null.
      */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
+    String[] getLocationValidators(String locationSetting) {
+        String[] validators = new String[2];
         Cursor locationCursor = getContext().getContentResolver().query(
                 WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
+                new String[]{WeatherContract.LocationEntry.COLUMN_ETAG,
+                        WeatherContract.LocationEntry.COLUMN_LAST_MODIFIED},
                 WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
                 new String[]{locationSetting},
                 null);
 
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
+        if (locationCursor != null) {
+            if (locationCursor.moveToFirst()) {
+                validators[0] = locationCursor.getString(0);
+                validators[1] = locationCursor.getString(1);
+            }
+            locationCursor.close();
         }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
+        return validators;
     }
 
     /**
@@ -576,6 +849,36 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 context.getString(R.string.content_authority), bundle);
     }
 
+    /**
+     * Helper method to have the sync adapter sync one location immediately.  Use
+     * {@link SyncRequestCoalescer} for requests that can come in bursts.
+     *
+     * @param context The context used to access the account service
+     */
+    public static void syncLocationImmediately(Context context, String locationSetting) {
+        Bundle bundle = new Bundle();
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        bundle.putStringArray(SYNC_EXTRAS_LOCATIONS, new String[]{locationSetting});
+        ContentResolver.requestSync(getSyncAccount(context),
+                context.getString(R.string.content_authority), bundle);
+    }
+
+    /**
+     * Helper method to have the sync adapter refresh every stored location immediately,
+     * rather than just the preferred one.
+     *
+     * @param context The context used to access the account service
+     */
+    public static void syncAllLocationsImmediately(Context context) {
+        Bundle bundle = new Bundle();
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        bundle.putBoolean(SYNC_EXTRAS_ALL_LOCATIONS, true);
+        ContentResolver.requestSync(getSyncAccount(context),
+                context.getString(R.string.content_authority), bundle);
+    }
+
     /**
      * Helper method to get the fake account to be used with SyncAdapter, or make a new one
      * if the fake account doesn't exist yet.  If we make a new account, we call the
@@ -585,6 +888,14 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
      * @return a fake account.
      */
     public static Account getSyncAccount(Context context) {
+        Account account = sSyncAccount;
+        return account != null ? account : resolveSyncAccount(context);
+    }
+
+    private static synchronized Account resolveSyncAccount(Context context) {
+        if (sSyncAccount != null) {
+            return sSyncAccount;
+        }
         // Get an instance of the Android account manager
         AccountManager accountManager =
                 (AccountManager) context.getSystemService(Context.ACCOUNT_SERVICE);
@@ -603,6 +914,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             if (!accountManager.addAccountExplicitly(newAccount, "", null)) {
                 return null;
             }
+            // onAccountCreated asks for the account again.
+            sSyncAccount = newAccount;
             /*
              * If you don't set android:syncable="true" in
              * in your <provider> element in the manifest,
@@ -611,6 +924,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
              */
             onAccountCreated(newAccount, context);
         }
+        sSyncAccount = newAccount;
         return newAccount;
     }
 
@@ -0,0 +1,129 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Random;
+
+/**
+ * Keeps the sync adapter from hammering a forecast server that keeps failing.
+ * <p>
+ * Every failure pushes the next retry of the endpoint back exponentially, by a random amount
+ * between half and all of the backoff so that phones that failed together don't come back
+ * together.  Once {@link #FAILURE_THRESHOLD} requests in a row have failed, the breaker opens
+ * and requests to the endpoint are refused until the retry time.  The first request after
+ * that is let through to try the server; a success closes the breaker, a failure opens it
+ * again for longer.
+ * <p>
+ * The state is kept in its own preferences file, so a restart of the process doesn't send
+ * every sync straight back to a server that's down.
+ */
+public class SyncCircuitBreaker {
+
+    static final String PREFS_NAME = "sync_circuit_breaker";
+
+    // Failures in a row that open the breaker.
+    static final int FAILURE_THRESHOLD = 3;
+    static final long BASE_BACKOFF_MILLIS = 30 * 1000;
+    static final long MAX_BACKOFF_MILLIS = 6 * 60 * 60 * 1000;
+
+    private static final String KEY_FAILURES = ".failures";
+    private static final String KEY_RETRY_AT = ".retry_at";
+    private static final String KEY_LAST_ERROR = ".last_error";
+
+    private static SyncCircuitBreaker sInstance;
+
+    private final SharedPreferences mPrefs;
+    private final Random mRandom;
+
+    public static synchronized SyncCircuitBreaker getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncCircuitBreaker(context.getApplicationContext()
+                    .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE), new Random());
+        }
+        return sInstance;
+    }
+
+    SyncCircuitBreaker(SharedPreferences prefs, Random random) {
+        mPrefs = prefs;
+        mRandom = random;
+    }
+
+    /**
+     * @return true if a request may be made to the endpoint now.
+     */
+    public synchronized boolean allowRequest(String endpoint) {
+        if (!isOpen(endpoint)) {
+            return true;
+        }
+        long now = currentTimeMillis();
+        if (now < getRetryAt(endpoint)) {
+            return false;
+        }
+        // Let this request try the server, and hold the others back while it does.
+        mPrefs.edit().putLong(endpoint + KEY_RETRY_AT, now + BASE_BACKOFF_MILLIS).apply();
+        return true;
+    }
+
+    /**
+     * @return true if enough requests in a row have failed that the endpoint is only tried
+     * again once its retry time comes.
+     */
+    public synchronized boolean isOpen(String endpoint) {
+        return getFailures(endpoint) >= FAILURE_THRESHOLD;
+    }
+
+    public synchronized int getFailures(String endpoint) {
+        return mPrefs.getInt(endpoint + KEY_FAILURES, 0);
+    }
+
+    /**
+     * @return when, in milliseconds since the epoch, the endpoint should be tried again, or 0
+     * if it hasn't failed.
+     */
+    public synchronized long getRetryAt(String endpoint) {
+        return mPrefs.getLong(endpoint + KEY_RETRY_AT, 0);
+    }
+
+    /**
+     * @return what went wrong the last time the endpoint failed, or null.
+     */
+    public synchronized String getLastError(String endpoint) {
+        return mPrefs.getString(endpoint + KEY_LAST_ERROR, null);
+    }
+
+    public synchronized void recordSuccess(String endpoint) {
+        if (getFailures(endpoint) == 0) {
+            return;
+        }
+        mPrefs.edit()
+                .remove(endpoint + KEY_FAILURES)
+                .remove(endpoint + KEY_RETRY_AT)
+                .remove(endpoint + KEY_LAST_ERROR)
+                .apply();
+    }
+
+    /**
+     * @return when the endpoint should be tried again, in milliseconds since the epoch.
+     */
+    public synchronized long recordFailure(String endpoint, String error) {
+        int failures = getFailures(endpoint) + 1;
+        long backoff = MAX_BACKOFF_MILLIS;
+        // Past 30 doublings the shift would overflow, and the cap has long been reached.
+        if (failures <= 30) {
+            backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (failures - 1));
+        }
+        long retryAt = currentTimeMillis() + backoff / 2
+                + (long) (mRandom.nextDouble() * (backoff / 2));
+        mPrefs.edit()
+                .putInt(endpoint + KEY_FAILURES, failures)
+                .putLong(endpoint + KEY_RETRY_AT, retryAt)
+                .putString(endpoint + KEY_LAST_ERROR, error)
+                .apply();
+        return retryAt;
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.android.sunshine.app.sync;
+
+/**
+ * Decides how long to wait before the next periodic sync, from how much the last one changed.
+ * <p>
+ * A forecast that comes back identical a few times in a row is stable, so the interval grows.
+ * A change to today's row, or to a large share of the days, means the weather is on the move,
+ * so the interval shrinks.  A change to a few later days, which happens as every new day is
+ * added at the end, moves it back toward the base interval.  It never leaves the floor and
+ * ceiling it was given.
+ */
+public class SyncIntervalPolicy {
+
+    // How many syncs in a row have to change nothing before the interval grows.
+    static final int STABLE_SYNCS_TO_GROW = 2;
+    // How much the interval grows by, and what it's divided by to come back to the base.
+    static final float GROWTH = 1.5f;
+    // Share of the days that have to change for the weather to count as volatile.
+    static final float VOLATILE_SHARE = 0.5f;
+
+    /**
+     * Where the policy stands after a sync.  Intervals are in seconds.
+     */
+    public static final class State {
+        public final int interval;
+        // Syncs in a row that changed nothing.
+        public final int stableSyncs;
+
+        public State(int interval, int stableSyncs) {
+            this.interval = interval;
+            this.stableSyncs = stableSyncs;
+        }
+    }
+
+    private final int mFloor;
+    private final int mBase;
+    private final int mCeiling;
+
+    /**
+     * @param floor   the shortest interval, in seconds
+     * @param base    the interval to start from and return to
+     * @param ceiling the longest interval
+     */
+    public SyncIntervalPolicy(int floor, int base, int ceiling) {
+        if (floor <= 0 || floor > base || base > ceiling) {
+            throw new IllegalArgumentException("Sync intervals out of order: " + floor + ", "
+                    + base + ", " + ceiling);
+        }
+        mFloor = floor;
+        mBase = base;
+        mCeiling = ceiling;
+    }
+
+    public State getInitialState() {
+        return new State(mBase, 0);
+    }
+
+    /**
+     * @param state        where the policy stood before the sync
+     * @param daysChanged  how many days the sync inserted or updated
+     * @param daysSynced   how many days the sync got; 0 if the server said nothing changed
+     * @param todayChanged whether today's row was one of the days that changed
+     * @return where it stands now
+     */
+    public State next(State state, int daysChanged, int daysSynced, boolean todayChanged) {
+        int interval = clamp(state.interval);
+        if (todayChanged || (daysSynced > 0 && daysChanged >= daysSynced * VOLATILE_SHARE)) {
+            return new State(Math.max(mFloor, interval / 2), 0);
+        }
+        if (daysChanged == 0) {
+            int stableSyncs = state.stableSyncs + 1;
+            if (stableSyncs >= STABLE_SYNCS_TO_GROW) {
+                interval = Math.min(mCeiling, (int) (interval * GROWTH));
+            }
+            return new State(interval, stableSyncs);
+        }
+        if (interval > mBase) {
+            interval = Math.max(mBase, (int) (interval / GROWTH));
+        } else if (interval < mBase) {
+            interval = Math.min(mBase, (int) (interval * GROWTH));
+        }
+        return new State(interval, 0);
+    }
+
+    private int clamp(int interval) {
+        return Math.max(mFloor, Math.min(mCeiling, interval));
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Turns bursts of "sync this location now" requests into a single sync.  A request waits
+ * {@link #WINDOW_MILLIS} for others; if more come in, only the last location asked for is
+ * synced.  A location that was just synced isn't synced again within the window.
+ * <p>
+ * When the location asked for changes, a fetch still downloading the old one is disconnected,
+ * since nobody is going to look at it.  The sync adapter tells the coalescer about the fetches
+ * it starts and asks it whether a failed one was cancelled.
+ */
+public class SyncRequestCoalescer {
+
+    private static final String LOG_TAG = SyncRequestCoalescer.class.getSimpleName();
+
+    // How long a request waits for others to fold into it.
+    static final long WINDOW_MILLIS = 1500;
+
+    private static SyncRequestCoalescer sInstance;
+
+    private final Handler mHandler;
+    private final long mWindowMillis;
+
+    // The location the last request asked for.
+    private String mTarget;
+    // The location waiting for its sync to be requested, or null.
+    private String mPending;
+    private Context mPendingContext;
+    private String mLastSynced;
+    private long mLastSyncTime;
+
+    // Fetches the sync adapter is running, by their location.
+    private final Map<HttpURLConnection, String> mFetches = new HashMap<>();
+    private final Set<HttpURLConnection> mCancelledFetches =
+            Collections.newSetFromMap(new WeakHashMap<HttpURLConnection, Boolean>());
+
+    private int mRequestsReceived;
+    private int mSyncsExecuted;
+    private int mFetchesCancelled;
+
+    private final Runnable mSync = new Runnable() {
+        @Override
+        public void run() {
+            String location;
+            Context context;
+            synchronized (SyncRequestCoalescer.this) {
+                location = mPending;
+                context = mPendingContext;
+                mPending = null;
+                mPendingContext = null;
+                if (location == null) {
+                    return;
+                }
+                mLastSynced = location;
+                mLastSyncTime = SystemClock.elapsedRealtime();
+                mSyncsExecuted++;
+                Log.d(LOG_TAG, "Syncing " + location + ": " + mSyncsExecuted + " syncs for "
+                        + mRequestsReceived + " requests");
+            }
+            requestSync(context, location);
+        }
+    };
+
+    public static synchronized SyncRequestCoalescer getInstance() {
+        if (sInstance == null) {
+            sInstance = new SyncRequestCoalescer(new Handler(Looper.getMainLooper()),
+                    WINDOW_MILLIS);
+        }
+        return sInstance;
+    }
+
+    SyncRequestCoalescer(Handler handler, long windowMillis) {
+        mHandler = handler;
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Asks for the location to be synced soon, folding the request into any others made within
+     * the window.
+     */
+    public synchronized void request(Context context, String location) {
+        mRequestsReceived++;
+        if (!location.equals(mTarget)) {
+            cancelFetches(mTarget);
+            mTarget = location;
+        } else if (mPending == null && location.equals(mLastSynced)
+                && SystemClock.elapsedRealtime() - mLastSyncTime < mWindowMillis) {
+            // Just synced; this one adds nothing.
+            return;
+        }
+        mPending = location;
+        mPendingContext = context.getApplicationContext();
+        // Wait for the burst to end.
+        mHandler.removeCallbacks(mSync);
+        mHandler.postDelayed(mSync, mWindowMillis);
+    }
+
+    /**
+     * Called by the sync adapter before it fetches a location's forecast.
+     */
+    synchronized void onFetchStarted(String location, HttpURLConnection connection) {
+        mFetches.put(connection, location);
+    }
+
+    synchronized void onFetchFinished(HttpURLConnection connection) {
+        mFetches.remove(connection);
+    }
+
+    /**
+     * @return true if the fetch failed because a request for another location cancelled it,
+     * rather than because of the server or the network.
+     */
+    synchronized boolean isCancelled(HttpURLConnection connection) {
+        return mCancelledFetches.contains(connection);
+    }
+
+    public synchronized int getRequestsReceived() {
+        return mRequestsReceived;
+    }
+
+    public synchronized int getSyncsExecuted() {
+        return mSyncsExecuted;
+    }
+
+    public synchronized int getFetchesCancelled() {
+        return mFetchesCancelled;
+    }
+
+    void requestSync(Context context, String location) {
+        SunshineSyncAdapter.syncLocationImmediately(context, location);
+    }
+
+    private void cancelFetches(String location) {
+        if (location == null) {
+            return;
+        }
+        for (Map.Entry<HttpURLConnection, String> fetch : mFetches.entrySet()) {
+            if (location.equals(fetch.getValue()) && mCancelledFetches.add(fetch.getKey())) {
+                mFetchesCancelled++;
+                Log.d(LOG_TAG, "Cancelling the fetch of " + location + ", it's been superseded");
+                // Closing the connection can write to the network, so not on this thread.
+                final HttpURLConnection connection = fetch.getKey();
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        connection.disconnect();
+                    }
+                });
+            }
+        }
+    }
+}
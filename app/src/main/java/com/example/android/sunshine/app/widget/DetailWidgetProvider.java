@@ -15,6 +15,7 @@ import android.widget.RemoteViews;
 import com.example.android.sunshine.app.DetailActivity;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
@@ -82,7 +83,12 @@ public class DetailWidgetProvider extends AppWidgetProvider {
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
-        if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
+        if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())
+                || Utility.ACTION_DISPLAY_SETTINGS_CHANGED.equals(intent.getAction())) {
+            if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
+                DetailWidgetRemoteViewsService.markDataStale();
+            }
+            // Otherwise the list redraws the rows it holds with the new display settings.
             AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
             int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
                     new ComponentName(context, getClass()));
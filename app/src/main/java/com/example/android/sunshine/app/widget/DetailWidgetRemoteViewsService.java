@@ -41,6 +41,16 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     static final int INDEX_WEATHER_MIN_TEMP = 5;
 
     private Cursor data = null;
+    private String dataLocation;
+    private long dataDay;
+
+    // Set when the forecast changed, so the list has to query it again.  A change of units or
+    // art pack leaves it alone: the list then redraws the rows it holds.
+    private static volatile boolean sDataStale = true;
+
+    static void markDataStale() {
+        sDataStale = true;
+    }
 
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
@@ -55,6 +65,14 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
         @Override
         public void onDataSetChanged() {
+            String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
+            long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+            if (data != null && !sDataStale && location.equals(dataLocation) && today == dataDay) {
+                // Only the display settings changed; getViewAt formats the same rows anew.
+                return;
+            }
+            sDataStale = false;
+
             // Load data
             if (data != null) {
                 data.close();
@@ -65,7 +83,6 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
             // data. Therefore we need to clear (and finally restore) the calling identity so
             // that calls use our process and permission
             final long identityToken = Binder.clearCallingIdentity();
-            String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
             Uri weatherForLocationUri = WeatherContract.WeatherEntry
                     .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
             data = getContentResolver().query(weatherForLocationUri,
@@ -74,6 +91,8 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                     null,
                     WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
             Binder.restoreCallingIdentity(identityToken);
+            dataLocation = location;
+            dataDay = today;
         }
 
         @Override
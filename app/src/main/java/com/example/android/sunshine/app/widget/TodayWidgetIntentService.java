@@ -37,6 +37,10 @@ public class TodayWidgetIntentService extends IntentService {
     private static final int INDEX_MAX_TEMP = 2;
     private static final int INDEX_MIN_TEMP = 3;
 
+    // The forecast the widgets show now, so a change of units or art pack can redraw them
+    // without querying the provider again.  Only touched on the service's worker thread.
+    private static TodayForecast sShown;
+
     /**
      * Creates an IntentService.  Invoked by your subclass's constructor.
      */
@@ -52,31 +56,24 @@ public class TodayWidgetIntentService extends IntentService {
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
 
-        // Get today's data from the ContentProvider
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-
-        if (data == null) {
-            return;
-        }
-
-        if (!data.moveToFirst()) {
-            data.close();
-            return;
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        boolean displayOnly = intent != null
+                && Utility.ACTION_DISPLAY_SETTINGS_CHANGED.equals(intent.getAction());
+        TodayForecast forecast = sShown;
+        if (!displayOnly || forecast == null || !forecast.isFor(location, today)) {
+            forecast = queryToday(location, today);
+            sShown = forecast;
+            if (forecast == null) {
+                return;
+            }
         }
 
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
-        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp, true);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp, true);
-        data.close();
+        // Format it with the units and art pack in use now
+        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(forecast.weatherId);
+        String description = forecast.description;
+        String formattedMaxTemperature = Utility.formatTemperature(this, forecast.maxTemp, true);
+        String formattedMinTemperature = Utility.formatTemperature(this, forecast.minTemp, true);
 
         // Perform this loop procedure for each Today widget
         for (int appWidgetId : appWidgetIds) {
@@ -117,6 +114,30 @@ public class TodayWidgetIntentService extends IntentService {
         }
     }
 
+    private TodayForecast queryToday(String location, long today) {
+        // Get today's data from the ContentProvider
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                location, System.currentTimeMillis());
+        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
+                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        if (data == null) {
+            return null;
+        }
+
+        try {
+            if (!data.moveToFirst()) {
+                return null;
+            }
+            // Extract the weather data from the Cursor
+            return new TodayForecast(location, today, data.getInt(INDEX_WEATHER_ID),
+                    data.getString(INDEX_SHORT_DESC), data.getDouble(INDEX_MAX_TEMP),
+                    data.getDouble(INDEX_MIN_TEMP));
+        } finally {
+            data.close();
+        }
+    }
+
     private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
         // Prior to Jelly Bean, widgets were always their default size
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
@@ -145,4 +166,30 @@ public class TodayWidgetIntentService extends IntentService {
     private void setRemoteContentDescription(RemoteViews views, String description) {
         views.setContentDescription(R.id.widget_icon, description);
     }
+
+    /**
+     * Today's row for a location, as it came from the provider, before any formatting.
+     */
+    private static final class TodayForecast {
+        final String location;
+        final long day;
+        final int weatherId;
+        final String description;
+        final double maxTemp;
+        final double minTemp;
+
+        TodayForecast(String location, long day, int weatherId, String description,
+                      double maxTemp, double minTemp) {
+            this.location = location;
+            this.day = day;
+            this.weatherId = weatherId;
+            this.description = description;
+            this.maxTemp = maxTemp;
+            this.minTemp = minTemp;
+        }
+
+        boolean isFor(String location, long day) {
+            return this.location.equals(location) && this.day == day;
+        }
+    }
 }
@@ -7,6 +7,7 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 
+import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
@@ -29,8 +30,12 @@ public class TodayWidgetProvider extends AppWidgetProvider {
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
-        if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+        if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())
+                || Utility.ACTION_DISPLAY_SETTINGS_CHANGED.equals(intent.getAction())) {
+            // The service redraws from the forecast it already has when only the display
+            // settings changed.
+            context.startService(new Intent(context, TodayWidgetIntentService.class)
+                    .setAction(intent.getAction()));
         }
     }
 